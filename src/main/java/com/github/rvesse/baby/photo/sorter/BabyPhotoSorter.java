@@ -1,19 +1,31 @@
 package com.github.rvesse.baby.photo.sorter;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
@@ -46,16 +58,39 @@ import com.github.rvesse.airline.help.sections.common.CommonSections;
 import com.github.rvesse.airline.model.CommandMetadata;
 import com.github.rvesse.airline.parser.errors.handlers.CollectAll;
 import com.github.rvesse.airline.parser.options.ListValueOptionParser;
-import com.github.rvesse.baby.photo.sorter.files.CreationDateComparator;
-import com.github.rvesse.baby.photo.sorter.files.ExtensionFilter;
-import com.github.rvesse.baby.photo.sorter.files.SubdirectoryFilter;
+import com.github.rvesse.baby.photo.sorter.cache.MetadataCache;
+import com.github.rvesse.baby.photo.sorter.duplicates.DuplicateFinder;
+import com.github.rvesse.baby.photo.sorter.duplicates.DuplicateSet;
+import com.github.rvesse.baby.photo.sorter.duplicates.IncrementalHasher;
+import com.github.rvesse.baby.photo.sorter.files.CreationDateSorter;
+import com.github.rvesse.baby.photo.sorter.files.ExternalPhotoSorter;
+import com.github.rvesse.baby.photo.sorter.files.FileStores;
+import com.github.rvesse.baby.photo.sorter.files.LinkMode;
+import com.github.rvesse.baby.photo.sorter.files.PhotoCopier;
+import com.github.rvesse.baby.photo.sorter.files.PhotoMover;
+import com.github.rvesse.baby.photo.sorter.files.PhotoScanner;
+import com.github.rvesse.baby.photo.sorter.files.RenamePlanner;
+import com.github.rvesse.baby.photo.sorter.files.SequenceAllocator;
+import com.github.rvesse.baby.photo.sorter.hashing.HashAlgorithm;
+import com.github.rvesse.baby.photo.sorter.journal.Journal;
+import com.github.rvesse.baby.photo.sorter.journal.JournalEntry;
+import com.github.rvesse.baby.photo.sorter.journal.JournalOperation;
+import com.github.rvesse.baby.photo.sorter.metrics.Counter;
+import com.github.rvesse.baby.photo.sorter.metrics.RunStats;
+import com.github.rvesse.baby.photo.sorter.metrics.ThreadUsage;
 import com.github.rvesse.baby.photo.sorter.model.Configuration;
+import com.github.rvesse.baby.photo.sorter.model.EventSweep;
 import com.github.rvesse.baby.photo.sorter.model.Events;
 import com.github.rvesse.baby.photo.sorter.model.Photo;
+import com.github.rvesse.baby.photo.sorter.model.PhotoCatalog;
+import com.github.rvesse.baby.photo.sorter.model.PhotoSink;
 import com.github.rvesse.baby.photo.sorter.model.events.Event;
 import com.github.rvesse.baby.photo.sorter.model.naming.NamingPattern;
 import com.github.rvesse.baby.photo.sorter.model.naming.NamingPatternBuilder;
 import com.github.rvesse.baby.photo.sorter.model.naming.NamingScheme;
+import com.github.rvesse.baby.photo.sorter.pipeline.BoundedStage;
+import com.github.rvesse.baby.photo.sorter.utils.BufferedLog;
+import com.github.rvesse.baby.photo.sorter.utils.IoThreads;
 
 @Command(name = "baby-photo-sorter", description = "Organises, sorts and renames baby photos based on configurable age brackets")
 @Parser(flagNegationPrefix = "--no-", errorHandler = CollectAll.class, optionParsers = { ListValueOptionParser.class })
@@ -90,6 +125,11 @@ public class BabyPhotoSorter {
     private static final String MAC_THUMBS_FILE = ".DS_Store";
     private static final String WINDOWS_THUMBS_FILE = "Thumbs.db";
 
+    /**
+     * Maximum number of photos waiting in the queue of each pipeline stage
+     */
+    private static final int PIPELINE_CAPACITY = 1024;
+
     @SuppressWarnings("unused")
     @Inject
     private CommandMetadata metadata;
@@ -170,6 +210,11 @@ public class BabyPhotoSorter {
     @MutuallyExclusiveWith(tag = "preserveOrReorg")
     private boolean preserveOriginals = false;
 
+    @Option(name = {
+            "--link-mode" }, title = "LinkMode", description = "Specifies how preserved originals are placed into the target directory when --preserve is used, defaults to Copy.  Hard creates hard links when the source and target directories are on the same file system and Symbolic creates symbolic links to the originals, in both cases falling back to copying when linking is not possible.  Linking avoids duplicating the storage used by your photos when you only want a second sorted view of them.")
+    @AllowedEnumValues(LinkMode.class)
+    private LinkMode linkMode = LinkMode.Copy;
+
     @Option(name = {
             "--dry-run" }, description = "Specifies that a dry run should be done i.e. report what would have happened but don't actually do it.  When set also enabled verbose logging i.e. --dry-run implies --verbose")
     private boolean dryRun = false;
@@ -179,6 +224,10 @@ public class BabyPhotoSorter {
     @MutuallyExclusiveWith(tag = "preserveOrReorg")
     private boolean reorg = false;
 
+    @Option(name = {
+            "--stable" }, description = "Specifies that photos that are already correctly placed and named keep their existing sequence numbers, with new photos given the next free sequence numbers, so that reorganising only renames the photos affected by the changes.  Without this option --reorg compacts the sequence numbers, renumbering every photo in each group from 1.")
+    private boolean stable = false;
+
     @Option(name = {
             "--ignore" }, description = "Specifies that one/more directories should be excluded from scanning.  This may be useful when using --reorg if you have some sub-folders organised by hand that you don't want modified.")
     @Directory(mustExist = false, writable = false)
@@ -197,21 +246,91 @@ public class BabyPhotoSorter {
     private boolean allowDeletes = false;
 
     @Option(name = {
-            "--clean-empty-dirs" }, description = "Specifies that any resulting empty directories after organisation should be deleted")
+            "--hash" }, title = "HashAlgorithm", description = "Specifies the hash algorithm used to detect duplicate photos when --de-duplicate is used, defaults to Sha512.  Faster non-cryptographic algorithms such as Murmur3 can substantially reduce the CPU cost of de-duplication on low powered hardware.")
+    @AllowedEnumValues(HashAlgorithm.class)
+    private HashAlgorithm hashAlgorithm = HashAlgorithm.Sha512;
+
+    @Option(name = {
+            "--clean-empty-dirs" }, description = "Specifies that any resulting empty directories after organisation should be deleted, the source and target directories themselves are never deleted even if left empty")
     private boolean cleanEmptyDirs = false;
 
+    @Option(name = {
+            "--scan-threads" }, title = "ScanThreads", description = "Specifies the maximum number of directories that will be scanned in parallel when discovering photos, defaults to the number of available processors.  Higher values may be useful when photos reside on high latency storage e.g. a NAS")
+    @IntegerRange(min = 1, minInclusive = true)
+    private int scanThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = {
+            "--threads" }, title = "Threads", description = "Specifies the number of threads used to extract photo metadata, defaults to the number of available processors.  Higher values may be useful when photos reside on high latency storage e.g. a NAS")
+    @IntegerRange(min = 1, minInclusive = true)
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = {
+            "--hash-threads" }, title = "HashThreads", description = "Specifies the number of threads used to hash photos when --de-duplicate is used, defaults to the number of available processors.  Photos that could be duplicates are hashed while discovery is still in progress.")
+    @IntegerRange(min = 1, minInclusive = true)
+    private int hashThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = {
+            "--transfer-threads" }, title = "TransferThreads", description = "Specifies the maximum number of photos that are moved between file systems in parallel, e.g. when importing from an SD card, defaults to 4.  Such moves copy the photo, verifying the copy against the known hash of the photo (if any) as it is made, before deleting the original.")
+    @IntegerRange(min = 1, minInclusive = true)
+    private int transferThreads = 4;
+
+    @Option(name = {
+            "--organise-threads" }, title = "OrganiseThreads", description = "Specifies the maximum number of groups that are organised in parallel, defaults to the number of available processors.  Photos within a group are always organised in order, and if any photos are targeted at the location of a photo in another group all groups are organised sequentially.")
+    @IntegerRange(min = 1, minInclusive = true)
+    private int organiseThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = {
+            "--streaming" }, description = "Specifies that photos should be sorted and organised in bounded memory, this is intended for libraries too large to be held in memory.  Discovered photos are sorted in runs which are spilled to temporary files and then merged in date order, photos are grouped and organised in batches as they are merged.  Requires --target and can't be combined with --reorg, --stable or --de-duplicate.")
+    private boolean streaming = false;
+
+    @Option(name = {
+            "--streaming-budget" }, title = "Photos", description = "Specifies the maximum number of photos held in memory at once by each stage when using --streaming, defaults to 100000.")
+    @IntegerRange(min = 1, minInclusive = true)
+    private int streamingBudget = 100000;
+
+    @Option(name = {
+            "--metadata-cache" }, title = "MetadataCacheFile", description = "Specifies a file used to cache photo metadata between runs.  Creation dates and file hashes of photos that are unchanged since a previous run are taken from the cache rather than being recalculated which can substantially speed up repeated runs, particularly with --reorg and --de-duplicate.")
+    private String metadataCacheFile;
+
+    @Option(name = {
+            "--journal" }, title = "JournalFile", description = "Specifies a journal file in which every planned copy/move is recorded before it happens and marked as done afterwards.  If a run is interrupted the journal can be used with --resume or --rollback to complete or undo that run without having to rescan the library.")
+    private String journalFile;
+
+    @Option(name = {
+            "--resume" }, description = "Specifies that an interrupted run recorded in the journal given by --journal should be completed.  No photos are scanned or organised when this is used.")
+    @MutuallyExclusiveWith(tag = "journalReplay")
+    private boolean resume = false;
+
+    @Option(name = {
+            "--rollback" }, description = "Specifies that an interrupted run recorded in the journal given by --journal should be undone, restoring photos to their original locations.  No photos are scanned or organised when this is used.")
+    @MutuallyExclusiveWith(tag = "journalReplay")
+    private boolean rollback = false;
+
+    @Option(name = {
+            "--stats" }, description = "Specifies that statistics about where the run spent its time, e.g. wall and CPU time per stage, should be printed as JSON once the run completes.  When set logging goes to stderr so that stdout contains only the JSON.")
+    private boolean stats = false;
+
+    @Option(name = {
+            "--stats-file" }, title = "StatsFile", description = "Specifies a file to which statistics about where the run spent its time, e.g. wall and CPU time per stage, are written as JSON once the run completes")
+    private String statsFile;
+
+    private RunStats runStats;
+
     public void run() {
+        this.runStats = new RunStats();
+
         // Dry Run implies Verbose
         if (this.dryRun)
             this.verbose = true;
 
         // Set up Log4j
         // If Verbose set log level to DEBUG
+        // If printing statistics log to stderr so stdout is only the JSON
         ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
         builder.setStatusLevel(verbose ? Level.DEBUG : Level.INFO);
         builder.setConfigurationName("BabyPhotoSorter");
         AppenderComponentBuilder appenderBuilder = builder.newAppender("Stdout", "CONSOLE").addAttribute("target",
-                ConsoleAppender.Target.SYSTEM_OUT);
+                this.stats ? ConsoleAppender.Target.SYSTEM_ERR : ConsoleAppender.Target.SYSTEM_OUT);
         appenderBuilder
                 .add(builder.newLayout("PatternLayout").addAttribute("pattern", "%d [%t] %-5level: %msg%n%throwable"));
         builder.add(appenderBuilder);
@@ -226,6 +345,9 @@ public class BabyPhotoSorter {
             LOGGER.warn(
                     "Using --reorg is unnecessary when not using --subfolders/--target, source directories will already be rescanned and reorganised");
         }
+        if (this.linkMode != LinkMode.Copy && !this.preserveOriginals) {
+            LOGGER.warn("Using --link-mode has no effect unless --preserve is also used");
+        }
 
         // Create a configuration
         //@formatter:off
@@ -269,45 +391,160 @@ public class BabyPhotoSorter {
                 ignoredDirs.add(new File(dir).getAbsolutePath());
             }
         }
+        MetadataCache metadataCache = null;
+        if (this.metadataCacheFile != null) {
+            try {
+                metadataCache = MetadataCache.open(new File(this.metadataCacheFile));
+            } catch (IOException e) {
+                LOGGER.error("Failed to open metadata cache {} - {}", this.metadataCacheFile, e.getMessage());
+                System.exit(1);
+            }
+            // Ensure the cache is persisted even if we abort part way through
+            Runtime.getRuntime().addShutdownHook(new Thread(metadataCache::close));
+        }
+        Journal journal = null;
+        if (this.journalFile != null) {
+            try {
+                journal = Journal.open(new File(this.journalFile));
+            } catch (IOException e) {
+                LOGGER.error("Failed to open journal {} - {}", this.journalFile, e.getMessage());
+                System.exit(1);
+            }
+            if (this.resume || this.rollback) {
+                replayJournal(journal, metadataCache);
+                if (metadataCache != null) {
+                    metadataCache.close();
+                }
+                return;
+            } else if (journal.hasIncomplete()) {
+                LOGGER.error(
+                        "Journal {} has {} incomplete operations from an interrupted run, please use --resume or --rollback to complete or undo that run first",
+                        this.journalFile, journal.incompleteCount());
+                System.exit(1);
+            }
+        } else if (this.resume || this.rollback) {
+            LOGGER.error("The --resume and --rollback options require a journal to be specified via --journal");
+            System.exit(1);
+        }
+        if (this.streaming && (this.reorg || this.stable || this.deduplicate)) {
+            // These all need every photo in a group to be known up front
+            LOGGER.error("The --streaming option cannot be combined with --reorg, --stable or --de-duplicate");
+            System.exit(1);
+        }
+        if (this.streaming && this.target == null) {
+            // Batches are planned independently so a photo renamed in place
+            // may need a name still held by a photo in a later batch
+            LOGGER.error("The --streaming option requires a target directory to be specified via --target");
+            System.exit(1);
+        }
+
         // TODO Support configurable DOB format
         Configuration config = new Configuration(dob, dueDate, this.name, this.weekThreshold, this.monthThreshold,
-                this.yearThreshold, events, extensions, this.sequencePadding, namePattern);
+                this.yearThreshold, events, extensions, this.sequencePadding, namePattern, metadataCache);
 
-        // Start by discovering photos
-        List<Photo> photos = discoverPhotos(config, ignoredDirs);
+        long discovered;
+        if (this.streaming) {
+            discovered = organiseStreaming(config, ignoredDirs, journal);
+        } else {
+            // Start by discovering photos, indexing any photos already sorted
+            // into the target directory
+            // Metadata extraction, and hashing if de-duplicating, overlap
+            // with discovery
+            PhotoCatalog catalog = new PhotoCatalog(metadataCache);
+            Map<String, Long> targetIndex = new HashMap<>();
+            List<Photo> photos;
+            try (RunStats.Stage stage = this.runStats.stage("discover")) {
+                photos = discoverAndExtract(config, catalog, ignoredDirs, targetIndex);
+                stage.items(photos.size());
+            }
+            discovered = photos.size();
 
-        // Sort files by creation date
-        photos.sort(new CreationDateComparator());
+            // Sort files by creation date, from here on each step needs all
+            // the photos so runs only once the previous step has completed
+            try (RunStats.Stage stage = this.runStats.stage("sort")) {
+                CreationDateSorter.sort(photos);
+                stage.items(photos.size());
+            }
 
-        // Next bucket into groups
-        Map<String, List<Photo>> groups = groupPhotos(config, dateFormat, photos);
+            // Next bucket into groups
+            Map<String, List<Photo>> groups;
+            try (RunStats.Stage stage = this.runStats.stage("group")) {
+                groups = groupPhotos(config, dateFormat, photos);
+                stage.items(photos.size());
+            }
 
-        // Do de-duplication at this stage
-        if (this.deduplicate) {
-            deduplicatePhotos(config, groups);
-        }
+            // Do de-duplication at this stage
+            if (this.deduplicate) {
+                try (RunStats.Stage stage = this.runStats.stage("deduplicate")) {
+                    deduplicatePhotos(config, groups, photos);
+                    stage.items(photos.size());
+                }
+            }
 
-        // Create directories if appropriate
-        prepareGroups(config, groups);
+            // Create directories if appropriate
+            try (RunStats.Stage stage = this.runStats.stage("prepare")) {
+                prepareGroups(config, groups, new SequenceAllocator(targetIndex));
+                stage.items(groups.size());
+            }
 
-        // Reorganise photos
-        organisePhotos(config, groups);
+            // Reorganise photos
+            try (RunStats.Stage stage = this.runStats.stage("organise")) {
+                organisePhotos(config, groups, journal);
+                stage.items(groups.values().stream().mapToLong(List::size).sum());
+            }
+        }
+        if (journal != null && !this.dryRun) {
+            try {
+                journal.complete();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to remove completed journal {} - {}", this.journalFile, e.getMessage());
+            }
+        }
 
-        LOGGER.info("Discovered {} photos in {} source directories", photos.size(), this.sources.size());
+        LOGGER.info("Discovered {} photos in {} source directories", discovered, this.sources.size());
 
         if (this.cleanEmptyDirs) {
             LOGGER.info("Looking for empty directories to clean up...");
 
-            int cleaned = cleanEmptyDirectories(config, ignoredDirs);
+            int cleaned;
+            try (RunStats.Stage stage = this.runStats.stage("clean")) {
+                cleaned = cleanEmptyDirectories(config, ignoredDirs);
+                stage.items(cleaned);
+            }
 
             LOGGER.info("Cleaned {} empty directories", cleaned);
         }
+
+        if (metadataCache != null) {
+            metadataCache.close();
+        }
+
+        reportStats();
+    }
+
+    /**
+     * Prints and/or writes the run statistics if requested
+     */
+    private void reportStats() {
+        if (this.stats) {
+            System.out.println(this.runStats.toJson());
+        }
+        if (this.statsFile != null) {
+            try {
+                this.runStats.write(new File(this.statsFile));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write statistics to {} - {}", this.statsFile, e.getMessage());
+            }
+        }
     }
 
     private int cleanEmptyDirectories(Configuration config, Collection<String> ignoredDirs) {
         int cleaned = 0;
 
-        SubdirectoryFilter subdirFilter = new SubdirectoryFilter();
+        // Only directories beneath the sources and target are cleaned, as has
+        // always been the case, the directories the user gave us are kept
+        // even if organisation leaves them empty
+
         for (String source : this.sources) {
             if (source == null || source.length() == 0) {
                 continue;
@@ -316,6 +553,7 @@ public class BabyPhotoSorter {
             File sourceDir = new File(source);
             if (!sourceDir.isDirectory()) {
                 LOGGER.error("Source {} is not a directory", sourceDir.getAbsolutePath());
+                continue;
             }
             if (ignoredDirs.contains(sourceDir.getAbsolutePath())) {
                 LOGGER.warn("Ignoring directory {} as requested", sourceDir.getAbsolutePath());
@@ -324,10 +562,7 @@ public class BabyPhotoSorter {
 
             LOGGER.info("Looking for empty directories in source directory {}", sourceDir.getAbsolutePath());
 
-            // Clean any sub-directories found
-            for (File subDir : sourceDir.listFiles(subdirFilter)) {
-                cleaned += cleanEmptyDirectories(subDir, ignoredDirs);
-            }
+            cleaned += cleanEmptyDirectories(sourceDir, ignoredDirs);
         }
 
         // Clean target directories if using them
@@ -342,247 +577,782 @@ public class BabyPhotoSorter {
                 return cleaned;
             }
 
-            // Clean any sub-directories found
-            for (File subDir : targetDir.listFiles(subdirFilter)) {
-                cleaned += cleanEmptyDirectories(subDir, ignoredDirs);
-            }
+            cleaned += cleanEmptyDirectories(targetDir, ignoredDirs);
         }
 
         return cleaned;
     }
 
-    private int cleanEmptyDirectories(File dir, Collection<String> ignoredDirs) {
-        if (ignoredDirs.contains(dir.getAbsolutePath()))
-            return 0;
+    /**
+     * Removes empty directories beneath the given directory, the directory
+     * itself is never removed
+     * <p>
+     * The tree is walked once in post-order, each directory counting its
+     * remaining entries as they are visited so that by the time a directory is
+     * finished we already know whether all its sub-directories were removed
+     * and thus whether it is now empty. A directory containing only a system
+     * thumbnail database file is considered empty. Ignored directories are not
+     * walked and count as entries of their parent.
+     * </p>
+     * 
+     * @param root
+     *            Directory to clean
+     * @param ignoredDirs
+     *            Absolute paths of directories to ignore
+     * @return Number of directories removed
+     */
+    private int cleanEmptyDirectories(File root, Collection<String> ignoredDirs) {
+        Path rootPath = root.toPath();
+        Deque<DirectoryEntries> stack = new ArrayDeque<>();
+        int[] cleaned = new int[1];
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(rootPath) && ignoredDirs.contains(dir.toFile().getAbsolutePath())) {
+                        stack.peek().entries++;
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    stack.push(new DirectoryEntries());
+                    return FileVisitResult.CONTINUE;
+                }
 
-        int files = dir.listFiles().length;
-        if (files == 0) {
-            LOGGER.info("Removing empty directory {}", dir.getAbsolutePath());
-            if (!this.dryRun) {
-                if (!this.allowDeletes) {
-                    confirmDeletions("empty directories");
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    DirectoryEntries current = stack.peek();
+                    current.entries++;
+                    String name = file.getFileName().toString();
+                    if (StringUtils.equals(name, MAC_THUMBS_FILE) || StringUtils.equals(name, WINDOWS_THUMBS_FILE))
+                        current.thumbsFile = file;
+                    return FileVisitResult.CONTINUE;
                 }
-                if (!dir.delete()) {
-                    LOGGER.warn("Failed to delete empty directory {}", dir.getAbsolutePath());
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Can't tell what this is so treat it as content
+                    LOGGER.warn("Unable to inspect {} - {}", file, e.getMessage());
+                    if (!stack.isEmpty())
+                        stack.peek().entries++;
+                    return FileVisitResult.CONTINUE;
                 }
-                LOGGER.info("Deleted empty directory {}", dir.getAbsolutePath());
-            }
-            return 1;
-        } else if (files == 1) {
-            // Is is just the system Thumbnail database file present?
-            // If so clean that up and then delete the directory as well
-            File maybeThumbsFile = dir.listFiles()[0];
-            if (StringUtils.equals(maybeThumbsFile.getName(), MAC_THUMBS_FILE)
-                    || StringUtils.equals(maybeThumbsFile.getName(), WINDOWS_THUMBS_FILE)) {
-                LOGGER.info("Removing empty directory {}", dir.getAbsolutePath());
-                if (!this.dryRun) {
-                    if (!this.allowDeletes) {
-                        confirmDeletions("empty directories");
-                    }
-                    if (!maybeThumbsFile.delete() && !dir.delete()) {
-                        LOGGER.warn("Failed to delete empty directory {}", dir.getAbsolutePath());
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    DirectoryEntries current = stack.pop();
+                    if (dir.equals(rootPath))
+                        return FileVisitResult.CONTINUE;
+                    boolean empty = e == null && (current.entries == 0
+                            || (current.entries == 1 && current.thumbsFile != null));
+                    if (!empty || !removeEmptyDirectory(dir.toFile(), current.thumbsFile)) {
+                        stack.peek().entries++;
+                    } else {
+                        cleaned[0]++;
                     }
-                    LOGGER.info("Deleted empty directory {}", dir.getAbsolutePath());
+                    return FileVisitResult.CONTINUE;
                 }
-                return 1;
-            }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Failed to clean empty directories in {} - {}", root.getAbsolutePath(), e.getMessage());
         }
+        return cleaned[0];
+    }
 
-        int cleaned = 0;
-        for (File subDir : dir.listFiles(new SubdirectoryFilter())) {
-            cleaned += cleanEmptyDirectories(subDir, ignoredDirs);
-        }
+    /**
+     * Entries seen so far in a directory being walked
+     */
+    private static final class DirectoryEntries {
+        private int entries;
+        private Path thumbsFile;
+    }
 
-        if (cleaned > 0 && dir.exists() && !this.dryRun) {
-            // If we've cleaned some sub-directories then may be able to clean
-            // ourselves now
-            return cleaned + cleanEmptyDirectories(dir, ignoredDirs);
-        }
+    private boolean removeEmptyDirectory(File dir, Path thumbsFile) {
+        LOGGER.info("Removing empty directory {}", dir.getAbsolutePath());
+        if (this.dryRun)
+            return true;
 
-        return cleaned;
+        if (!this.allowDeletes) {
+            confirmDeletions("empty directories");
+        }
+        try {
+            // Is is just the system Thumbnail database file present?
+            // If so clean that up and then delete the directory as well
+            if (thumbsFile != null)
+                Files.delete(thumbsFile);
+            Files.delete(dir.toPath());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete empty directory {} - {}", dir.getAbsolutePath(), e.getMessage());
+            return false;
+        }
+        LOGGER.info("Deleted empty directory {}", dir.getAbsolutePath());
+        return true;
     }
 
-    private void organisePhotos(Configuration config, Map<String, List<Photo>> groups) {
+    private void organisePhotos(Configuration config, Map<String, List<Photo>> groups, Journal journal) {
+        // Calculate targets for every group up front so that we can determine
+        // whether the groups can be organised independently of each other
         for (String groupName : groups.keySet()) {
-            List<Photo> ps = groups.get(groupName);
-
-            Set<String> newLocations = new HashSet<>();
-            Set<String> oldLocations = new HashSet<>();
-            Set<String> conflicts = new HashSet<>();
-            int noOps = 0;
+            calculateTargets(config, groupName, groups.get(groupName));
+        }
 
-            // Calculate Targets
-            for (Photo p : ps) {
-                // Have to calculate target directory each time in case we are
-                // organising in-place and have multiple source directories
-                File targetDir = this.target != null ? new File(this.target) : p.getSourceDirectory();
-                if (this.subfolders) {
-                    targetDir = new File(targetDir, groupName);
+        FileStores stores = new FileStores();
+        PhotoCopier copier = new PhotoCopier(this.linkMode, stores);
+        PhotoMover mover = new PhotoMover(this.hashAlgorithm, this.transferThreads, stores);
+        try {
+            int parallelism = Math.min(this.organiseThreads, groups.size());
+            if (parallelism > 1 && areIndependent(groups)) {
+                organiseInParallel(config, groups, journal, copier, mover, parallelism);
+            } else {
+                if (parallelism > 1)
+                    LOGGER.debug("Some groups target the locations of photos in other groups, organising sequentially");
+                BufferedLog log = new BufferedLog(LOGGER, false);
+                // Cross device moves currently in flight keyed by source
+                // location
+                Map<String, PendingMove> pending = new LinkedHashMap<>();
+                for (String groupName : groups.keySet()) {
+                    organiseGroup(config, groupName, groups.get(groupName), journal, copier, mover, pending, log);
                 }
 
-                // If not using an explicit target directory we won't have tried
-                // to create the directory yet because the target directory
-                // depends on the source directory. In this case we need to try
-                // and create the directory here.
-                if (!targetDir.exists() || !targetDir.isDirectory()) {
-                    if (!this.dryRun) {
-                        if (!targetDir.mkdirs()) {
-                            LOGGER.error("Failed to create required target directory {}", targetDir.getAbsolutePath());
-                            System.exit(1);
-                        }
-                    } else {
-                        LOGGER.debug("Ensuring required target directory {} exists", targetDir.getAbsolutePath());
-                    }
+                // Wait for any remaining cross device moves
+                for (PendingMove move : pending.values()) {
+                    finishMove(config, journal, move, log);
                 }
+                pending.clear();
+            }
+            mover.close();
+            syncJournal(journal, new BufferedLog(LOGGER, false));
+        } catch (OrganiseFailedException e) {
+            abandonOrganise(journal, mover);
+        }
+
+        // Verify that all the expected files exist
+        for (List<Photo> ps : groups.values()) {
+            verifyTargets(ps);
+        }
+    }
 
-                // Get the new name for the photo
-                String newName = p.getName(config);
-                p.setTargetFile(new File(targetDir, newName));
+    /**
+     * Discovers, sorts and organises photos in bounded memory
+     * <p>
+     * Photos are sorted externally, then grouped as they are merged in date
+     * order. Since photos arrive in date order the photos of a group arrive
+     * together, except where an event interrupts an age bracket, and sequence
+     * IDs are allocated in the same order as they would be in memory. Each run
+     * of photos in the same group is organised in batches of at most the
+     * streaming budget photos.
+     * </p>
+     * 
+     * @return Number of photos discovered
+     */
+    private long organiseStreaming(Configuration config, Collection<String> ignoredDirs, Journal journal) {
+        Map<String, Long> targetIndex = new HashMap<>();
+        try (ExternalPhotoSorter sorter = new ExternalPhotoSorter(config.metadataCache(), this.streamingBudget,
+                this.threads)) {
+            try (RunStats.Stage stage = this.runStats.stage("discover")) {
+                discoverPhotos(config, sorter, ignoredDirs, targetIndex);
+                stage.items(sorter.size());
+            }
+            // The final merge happens lazily as photos are organised
+            RunStats.Stage sortStage = this.runStats.stage("sort");
+            try (ExternalPhotoSorter.Merge merge = sorter.merge()) {
+                sortStage.items(sorter.size());
+                sortStage.close();
+                LOGGER.info("Sorted {} photos in {} runs, organising...", sorter.size(), sorter.runs());
+                try (RunStats.Stage stage = this.runStats.stage("organise")) {
+                    organiseSorted(config, merge, journal, new SequenceAllocator(targetIndex));
+                    stage.items(sorter.size());
+                }
+            }
+            return sorter.size();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error("Failed to sort photos - {}", e.getMessage());
+            System.exit(1);
+            return 0;
+        }
+    }
 
-                if (p.isNoOp()) {
-                    noOps++;
+    private void organiseSorted(Configuration config, Iterator<ExternalPhotoSorter.SortedPhoto> photos,
+            Journal journal, SequenceAllocator sequences) {
+        FileStores stores = new FileStores();
+        PhotoCopier copier = new PhotoCopier(this.linkMode, stores);
+        PhotoMover mover = new PhotoMover(this.hashAlgorithm, this.transferThreads, stores);
+        BufferedLog log = new BufferedLog(LOGGER, false);
+        EventSweep sweep = config.events().sweep();
+        // Sequences when organising in-place
+        Map<String, Long> groupSequences = new HashMap<>();
+        Set<String> groups = new HashSet<>();
+        long count = 0;
+
+        PhotoCatalog catalog = new PhotoCatalog(config.metadataCache());
+        List<Photo> batch = new ArrayList<>();
+        String batchGroup = null;
+        try {
+            while (photos.hasNext()) {
+                ExternalPhotoSorter.SortedPhoto next = photos.next();
+                long creationDate = next.creationDate();
+                Event e = sweep.inEvent(creationDate);
+                String group = e != null ? e.name()
+                        : config.ageBrackets()
+                                .label(creationDate != PhotoCatalog.NO_DATE ? new Instant(creationDate) : null);
+
+                if (!batch.isEmpty() && (!group.equals(batchGroup) || batch.size() >= this.streamingBudget)) {
+                    organiseBatch(config, batchGroup, batch, journal, copier, mover, log);
+                    catalog = new PhotoCatalog(config.metadataCache());
+                    batch = new ArrayList<>();
                 }
+                batchGroup = group;
 
-                // Track for potential conflicting moves
-                oldLocations.add(p.getFile().getAbsolutePath());
-                if (!newLocations.add(p.getTargetFile().getAbsolutePath())) {
-                    // We shouldn't ever calculate multiple photos targeted at
-                    // the same place but we should still check for this just in
-                    // case
-                    LOGGER.warn("Multiple photos targeted at file {}", p.getTargetFile().getAbsolutePath());
-                    conflicts.add(p.getTargetFile().getAbsolutePath());
+                Photo p = next.addTo(catalog);
+                if (e != null) {
+                    p.setEvent(e);
+                    e.increment();
+                }
+                p.setGroup(group);
+                if (this.subfolders && this.target != null) {
+                    p.setSequenceId(sequences.next(new File(this.target, group)));
+                } else {
+                    p.setSequenceId(groupSequences.merge(group, 1L, Long::sum));
                 }
+                batch.add(p);
+                groups.add(group);
+                count++;
             }
+            if (!batch.isEmpty())
+                organiseBatch(config, batchGroup, batch, journal, copier, mover, log);
+            mover.close();
+            syncJournal(journal, log);
+        } catch (OrganiseFailedException e) {
+            abandonOrganise(journal, mover);
+        }
 
-            if (noOps == ps.size()) {
-                LOGGER.info("All photos in group {} are already in correct location, no reorganisation to do",
-                        groupName);
-                continue;
+        warnEmptyEvents(config);
+        LOGGER.info("Sorted {} photos into {} groups", count, groups.size());
+    }
+
+    private void organiseBatch(Configuration config, String groupName, List<Photo> batch, Journal journal,
+            PhotoCopier copier, PhotoMover mover, BufferedLog log) {
+        LOGGER.debug("Organising batch of {} photos for group {}", batch.size(), groupName);
+        calculateTargets(config, groupName, batch);
+        Map<String, PendingMove> pending = new LinkedHashMap<>();
+        organiseGroup(config, groupName, batch, journal, copier, mover, pending, log);
+        for (PendingMove move : pending.values()) {
+            finishMove(config, journal, move, log);
+        }
+
+        // Verify that all the expected files exist
+        verifyTargets(batch);
+    }
+
+    /**
+     * Verifies that organised photos exist at their target files, exiting if
+     * any are missing
+     * 
+     * @param photos
+     *            Organised photos
+     */
+    private void verifyTargets(Collection<Photo> photos) {
+        if (this.dryRun)
+            return;
+        for (Photo p : photos) {
+            if (!p.getTargetFile().exists()) {
+                LOGGER.error("FATAL: Expected Photo {} was not found, data loss may have occurred!",
+                        p.getTargetFile().getAbsolutePath());
+                System.exit(1);
             }
+        }
+    }
 
-            // Determine move conflicts
-            for (String location : newLocations) {
-                if (oldLocations.contains(location)) {
-                    // Move Conflict, we're moving this file to a location that
-                    // is already in use so this could cause data loss!!!
-                    conflicts.add(location);
+    private void calculateTargets(Configuration config, String groupName, List<Photo> ps) {
+        Set<String> newLocations = new HashSet<>();
+        for (Photo p : ps) {
+            File targetDir = getTargetDirectory(p, groupName);
+
+            // If not using an explicit target directory we won't have tried
+            // to create the directory yet because the target directory
+            // depends on the source directory. In this case we need to try
+            // and create the directory here.
+            if (!targetDir.exists() || !targetDir.isDirectory()) {
+                if (!this.dryRun) {
+                    if (!targetDir.mkdirs()) {
+                        LOGGER.error("Failed to create required target directory {}", targetDir.getAbsolutePath());
+                        System.exit(1);
+                    }
+                } else {
+                    LOGGER.debug("Ensuring required target directory {} exists", targetDir.getAbsolutePath());
                 }
             }
 
-            if (conflicts.size() > 0) {
-                LOGGER.warn("{} {} conflicts detected for group {}", conflicts.size(),
-                        this.preserveOriginals ? "copy" : "move", groupName);
-
-                // Handle conflicts by changing the source location of the file
-                // to a temporary location
-                for (Photo p : ps) {
-                    File tempFile = null;
-                    try {
-                        // Create a temporary file location
-                        // This creates a zero byte file which we should
-                        // immediately delete
-                        tempFile = File.createTempFile("photo", p.getExtension(), p.getTargetFile().getParentFile());
-                        tempFile.delete();
-                        LOGGER.debug("Renaming Photo {} temporarily to {} to avoid {} conflicts",
-                                p.getFile().getAbsolutePath(), tempFile.getAbsolutePath(),
-                                this.preserveOriginals ? "copy" : "move");
-
-                        // Copy/Move there as appropriate
-                        if (this.preserveOriginals) {
-                            if (!this.dryRun) {
-                                Files.copy(p.getFile().toPath(), tempFile.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
-                            }
-                        } else {
-                            if (!this.dryRun) {
-                                Files.move(p.getFile().toPath(), tempFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
-                            }
-                        }
+            // Get the new name for the photo
+            String newName = p.getName(config);
+            p.setTargetFile(new File(targetDir, newName));
 
-                        // Update source file accordingly
-                        p.setFile(tempFile);
-                    } catch (IOException e) {
-                        LOGGER.error("Failed to temporarily rename photo {} to {} - {}", p.getFile().getAbsolutePath(),
-                                tempFile, e.getMessage());
-                        System.exit(1);
+            if (!newLocations.add(p.getTargetFile().getAbsolutePath())) {
+                // We shouldn't ever calculate multiple photos targeted at
+                // the same place but we should still check for this just in
+                // case
+                LOGGER.warn("Multiple photos targeted at file {}", p.getTargetFile().getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Determines whether groups can be organised independently of each other
+     * <p>
+     * Groups are independent if no photo is targeted at the current location
+     * of a photo in another group, nor at the same location as a photo in
+     * another group. Otherwise the outcome depends on the order in which the
+     * groups are organised so they must be organised sequentially.
+     * </p>
+     * 
+     * @param groups
+     *            Groups whose targets have been calculated
+     * @return True if independent
+     */
+    private boolean areIndependent(Map<String, List<Photo>> groups) {
+        Map<String, String> sources = new HashMap<>();
+        for (Map.Entry<String, List<Photo>> group : groups.entrySet()) {
+            for (Photo p : group.getValue()) {
+                sources.put(p.getFile().getAbsolutePath(), group.getKey());
+            }
+        }
+        Map<String, String> targets = new HashMap<>();
+        for (Map.Entry<String, List<Photo>> group : groups.entrySet()) {
+            for (Photo p : group.getValue()) {
+                String target = p.getTargetFile().getAbsolutePath();
+                String sourceGroup = sources.get(target);
+                if (sourceGroup != null && !sourceGroup.equals(group.getKey()))
+                    return false;
+                String targetGroup = targets.putIfAbsent(target, group.getKey());
+                if (targetGroup != null && !targetGroup.equals(group.getKey()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Organises independent groups in parallel
+     * <p>
+     * Each group is still organised in its planned order by a single thread,
+     * with its log messages buffered and then replayed in group order so that
+     * the output is the same regardless of how the groups were scheduled. If
+     * any group fails no further groups are started.
+     * </p>
+     */
+    private void organiseInParallel(Configuration config, Map<String, List<Photo>> groups, Journal journal,
+            PhotoCopier copier, PhotoMover mover, int parallelism) {
+        LOGGER.debug("Organising {} groups using {} threads", groups.size(), parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, ThreadUsage.threadFactory());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<Future<?>> futures = new ArrayList<>();
+        List<BufferedLog> logs = new ArrayList<>();
+        for (String groupName : groups.keySet()) {
+            List<Photo> ps = groups.get(groupName);
+            BufferedLog log = new BufferedLog(LOGGER, true);
+            logs.add(log);
+            futures.add(executor.submit(() -> {
+                if (failed.get())
+                    return;
+                try {
+                    Map<String, PendingMove> pending = new LinkedHashMap<>();
+                    organiseGroup(config, groupName, ps, journal, copier, mover, pending, log);
+                    for (PendingMove move : pending.values()) {
+                        finishMove(config, journal, move, log);
                     }
+                } catch (OrganiseFailedException e) {
+                    failed.set(true);
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    log.error("Unexpected error organising group {} - {}", groupName, e.getMessage());
                 }
+            }));
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                failed.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+                LOGGER.error("Interrupted while organising photos");
+            } finally {
+                logs.get(i).replay();
             }
+        }
+        if (failed.get())
+            throw new OrganiseFailedException();
+    }
+
+    /**
+     * Organises a single group whose targets have been calculated
+     * 
+     * @param config
+     *            Configuration
+     * @param groupName
+     *            Group name
+     * @param ps
+     *            Photos in the group
+     * @param journal
+     *            Journal, may be {@code null}
+     * @param copier
+     *            Copier
+     * @param mover
+     *            Mover
+     * @param pending
+     *            Cross device moves currently in flight keyed by source
+     *            location, moves started for this group are added to this
+     * @param log
+     *            Log
+     */
+    private void organiseGroup(Configuration config, String groupName, List<Photo> ps, Journal journal,
+            PhotoCopier copier, PhotoMover mover, Map<String, PendingMove> pending, BufferedLog log) {
+        int noOps = 0;
+        for (Photo p : ps) {
+            if (p.isNoOp())
+                noOps++;
+        }
+        if (noOps == ps.size()) {
+            log.info("All photos in group {} are already in correct location, no reorganisation to do", groupName);
+            return;
+        }
 
-            // Do the actual copies/moves, we've resolved possible conflicts by
-            // copying/moving the sources to a temporary location at this point
+        // Plan the moves, photos whose target is free are moved directly and
+        // only cycles of moves need to go via temporary locations
+        RenamePlanner plan = RenamePlanner.plan(ps, this.preserveOriginals);
+        if (plan.conflicts().size() > 0) {
+            for (Photo p : plan.conflicts()) {
+                log.error(
+                        "Unable to {} photo {} to target file {} as another photo is already at or targeted at that location, refusing to overwrite an existing file!",
+                        this.preserveOriginals ? "copy" : "move", p.getFile().getAbsolutePath(),
+                        p.getTargetFile().getAbsolutePath());
+            }
+            throw new OrganiseFailedException();
+        }
+        if (plan.temporaryMoves() > 0) {
+            log.warn("{} move cycles detected for group {}, one photo per cycle will be temporarily renamed",
+                    plan.temporaryMoves(), groupName);
+        }
+        if (noOps > 0 && log.isDebugEnabled()) {
             for (Photo p : ps) {
-                // Check whether there is actually anything to do
-                // i.e. if the photo is already in the correct place and has the
-                // correct name just skip it
-                if (p.isNoOp()) {
-                    // Source and Target Filename are also the same
-                    // Therefore nothing to do
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Photo {} is already sorted into the correct location",
-                                p.getFile().getAbsolutePath());
-                    }
+                if (p.isNoOp())
+                    log.debug("Photo {} is already sorted into the correct location", p.getFile().getAbsolutePath());
+            }
+        }
 
-                    // Skip this photo
-                    oldLocations.remove(p.getFile().getAbsolutePath());
-                    newLocations.remove(p.getTargetFile().getAbsolutePath());
-                    continue;
+        // Locations vacated by earlier moves, in a dry run these will still
+        // exist so need to be tracked to avoid spurious conflicts
+        Set<String> vacated = new HashSet<>();
+        // Choose temporary locations up front so that the complete plan can
+        // be journaled before anything is changed
+        List<RenamePlanner.Step> steps = plan.steps();
+        File[] destinations = new File[steps.size()];
+        JournalEntry[] entries = new JournalEntry[steps.size()];
+        Map<Photo, File> locations = new IdentityHashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            Photo p = steps.get(i).photo();
+            File from = locations.getOrDefault(p, p.getFile());
+            if (steps.get(i).isTemporary()) {
+                destinations[i] = createTemporaryLocation(p, log);
+                locations.put(p, destinations[i]);
+            } else {
+                destinations[i] = p.getTargetFile();
+            }
+            if (journal != null && !this.dryRun) {
+                try {
+                    entries[i] = journal.plan(this.preserveOriginals && !steps.get(i).isTemporary()
+                            ? JournalOperation.COPY : JournalOperation.MOVE, from, destinations[i]);
+                } catch (IOException e) {
+                    log.error("Failed to write journal {} - {}", this.journalFile, e.getMessage());
+                    throw new OrganiseFailedException();
                 }
+            }
+        }
+        syncJournal(journal, log);
 
-                if (LOGGER.isDebugEnabled())
-                    LOGGER.debug("{} photo {} to folder {} as {}", this.preserveOriginals ? "Copying" : "Moving",
-                            p.getFile().getAbsolutePath(), p.getTargetFile().getParentFile().getAbsolutePath(),
-                            p.getTargetFile().getName());
-
-                if (p.getTargetFile().exists()) {
-                    LOGGER.error(
-                            "Unable to {} photo {} to target file {} as a file of that name already exists, refusing to overwrite an existing file!",
-                            this.preserveOriginals ? "copy" : "move", p.getFile().getAbsolutePath(),
-                            p.getTargetFile().getAbsolutePath());
-                    System.exit(1);
-                }
+        for (int i = 0; i < steps.size(); i++) {
+            Photo p = steps.get(i).photo();
 
-                // Perform actual move/copy
-                if (this.preserveOriginals) {
-                    try {
-                        if (!this.dryRun)
-                            Files.copy(p.getFile().toPath(), p.getTargetFile().toPath(),
-                                    StandardCopyOption.COPY_ATTRIBUTES);
-                    } catch (IOException e) {
-                        LOGGER.error("Failed to copy photo {} to directory {} - {}", p.getFile().getAbsolutePath(),
-                                p.getTargetFile().getParentFile().getAbsolutePath(), e.getMessage());
-                        System.exit(1);
-                    }
-                } else {
-                    try {
-                        if (!this.dryRun)
-                            Files.move(p.getFile().toPath(), p.getTargetFile().toPath(),
-                                    StandardCopyOption.ATOMIC_MOVE);
-                    } catch (IOException e) {
-                        LOGGER.error("Failed to move photo {} to directory {} - {}", p.getFile().getAbsolutePath(),
-                                p.getTargetFile().getParentFile().getAbsolutePath(), e.getMessage());
-                        System.exit(1);
+            // If the destination is the source of an in flight move wait
+            // for that to complete
+            PendingMove blocker = pending.remove(destinations[i].getAbsolutePath());
+            if (blocker != null) {
+                finishMove(config, journal, blocker, log);
+            }
+
+            if (steps.get(i).isTemporary()) {
+                // Break a cycle by moving the photo to a temporary location
+                File tempFile = destinations[i];
+                try {
+                    log.debug("Renaming Photo {} temporarily to {} to avoid move conflicts",
+                            p.getFile().getAbsolutePath(), tempFile.getAbsolutePath());
+                    if (!this.dryRun) {
+                        PhotoMover.move(p.getFile().toPath(), tempFile.toPath(), this.hashAlgorithm);
+                        Counter.TemporaryMoves.increment();
+                        if (config.metadataCache() != null)
+                            config.metadataCache().relocate(p.getFile(), tempFile);
                     }
+
+                    // Update source file accordingly
+                    vacated.add(p.getFile().getAbsolutePath());
+                    p.setFile(tempFile);
+                } catch (IOException e) {
+                    log.error("Failed to temporarily rename photo {} to {} - {}", p.getFile().getAbsolutePath(),
+                            tempFile, e.getMessage());
+                    throw new OrganiseFailedException();
                 }
+                journalDone(journal, entries[i], log);
+                continue;
+            }
 
-                oldLocations.remove(p.getFile().getAbsolutePath());
-                newLocations.remove(p.getTargetFile().getAbsolutePath());
+            if (log.isDebugEnabled())
+                log.debug("{} photo {} to folder {} as {}", this.preserveOriginals ? "Copying" : "Moving",
+                        p.getFile().getAbsolutePath(), p.getTargetFile().getParentFile().getAbsolutePath(),
+                        p.getTargetFile().getName());
+
+            if (p.getTargetFile().exists()
+                    && !(this.dryRun && vacated.contains(p.getTargetFile().getAbsolutePath()))) {
+                log.error(
+                        "Unable to {} photo {} to target file {} as a file of that name already exists, refusing to overwrite an existing file!",
+                        this.preserveOriginals ? "copy" : "move", p.getFile().getAbsolutePath(),
+                        p.getTargetFile().getAbsolutePath());
+                throw new OrganiseFailedException();
             }
 
-            // Verify that all the expected files exist
-            if (!this.dryRun) {
-                for (Photo p : ps) {
-                    if (!p.getTargetFile().exists()) {
-                        LOGGER.error("FATAL: Expected Photo {} was not found, data loss may have occurred!",
-                                p.getTargetFile().getAbsolutePath());
-                        System.exit(1);
+            // Perform actual move/copy
+            if (this.preserveOriginals) {
+                try {
+                    if (!this.dryRun) {
+                        LinkMode mode = copier.transfer(p.getFile().toPath(), p.getTargetFile().toPath());
+                        (mode == LinkMode.Copy ? Counter.Copies : Counter.Links).increment();
                     }
+                } catch (IOException e) {
+                    log.error("Failed to copy photo {} to directory {} - {}", p.getFile().getAbsolutePath(),
+                            p.getTargetFile().getParentFile().getAbsolutePath(), e.getMessage());
+                    throw new OrganiseFailedException();
                 }
+            } else {
+                try {
+                    if (!this.dryRun) {
+                        Path from = p.getFile().toPath(), to = p.getTargetFile().toPath();
+                        if (mover.isCrossDevice(from, to)) {
+                            // Copy across devices in the background
+                            PendingMove move = new PendingMove(p, p.getFile(), entries[i],
+                                    mover.moveAcrossDevices(from, to, p.knownHash(this.hashAlgorithm)));
+                            pending.put(p.getFile().getAbsolutePath(), move);
+                            continue;
+                        }
+                        Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+                        Counter.Moves.increment();
+                        if (config.metadataCache() != null)
+                            config.metadataCache().relocate(p.getFile(), p.getTargetFile());
+                    }
+                } catch (IOException e) {
+                    log.error("Failed to move photo {} to directory {} - {}", p.getFile().getAbsolutePath(),
+                            p.getTargetFile().getParentFile().getAbsolutePath(), e.getMessage());
+                    throw new OrganiseFailedException();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.error("Interrupted while moving photo {}", p.getFile().getAbsolutePath());
+                    throw new OrganiseFailedException();
+                }
+                vacated.add(p.getFile().getAbsolutePath());
+            }
+            journalDone(journal, entries[i], log);
+        }
+        syncJournal(journal, log);
+    }
+
+    /**
+     * Thrown when organising fails, the cause having already been logged
+     */
+    private static final class OrganiseFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        OrganiseFailedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A cross device move that is in flight
+     */
+    private static final class PendingMove {
+        private final Photo photo;
+        private final File source;
+        private final JournalEntry entry;
+        private final Future<byte[]> future;
+
+        PendingMove(Photo photo, File source, JournalEntry entry, Future<byte[]> future) {
+            this.photo = photo;
+            this.source = source;
+            this.entry = entry;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Abandons organising photos after a failure, exiting once any cross
+     * device moves still in flight have finished so that the process is never
+     * killed part way through copying a photo
+     * 
+     * @param journal
+     *            Journal, may be {@code null}
+     * @param mover
+     *            Mover
+     */
+    private void abandonOrganise(Journal journal, PhotoMover mover) {
+        try {
+            mover.awaitInFlight();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while waiting for in flight moves to finish");
+        }
+        mover.close();
+        if (journal != null && !this.dryRun) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                LOGGER.error("Failed to sync journal {} - {}", this.journalFile, e.getMessage());
+            }
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Waits for a cross device move to complete
+     * <p>
+     * As the photo was copied the moved photo has a new file key so rather
+     * than relocating its cached metadata the metadata is cached afresh,
+     * including the hash calculated during the copy.
+     * </p>
+     */
+    private void finishMove(Configuration config, Journal journal, PendingMove move, BufferedLog log) {
+        Photo p = move.photo;
+        byte[] hash = null;
+        try {
+            hash = move.future.get();
+        } catch (ExecutionException e) {
+            log.error("Failed to move photo {} to directory {} - {}", move.source.getAbsolutePath(),
+                    p.getTargetFile().getParentFile().getAbsolutePath(), e.getCause().getMessage());
+            throw new OrganiseFailedException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while moving photo {}", move.source.getAbsolutePath());
+            throw new OrganiseFailedException();
+        }
+
+        MetadataCache cache = config.metadataCache();
+        if (cache != null) {
+            cache.relocate(move.source, p.getTargetFile());
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(p.getTargetFile().toPath(),
+                        BasicFileAttributes.class);
+                if (p.hasValidCreationDate())
+                    cache.putCreationDate(p.getTargetFile(), attributes, p.creationDateMillis(),
+                            p.creationDateSource());
+                cache.putHash(p.getTargetFile(), attributes, this.hashAlgorithm.getName(), hash);
+            } catch (IOException e) {
+                log.debug("Unable to cache metadata for moved photo {} - {}", p.getTargetFile().getAbsolutePath(),
+                        e.getMessage());
+            }
+        }
+        journalDone(journal, move.entry, log);
+    }
+
+    /**
+     * Chooses a temporary location for a photo that needs to be moved out of
+     * the way to break a cycle of moves
+     * 
+     * @param p
+     *            Photo
+     * @param log
+     *            Log
+     * @return Temporary location
+     */
+    private File createTemporaryLocation(Photo p, BufferedLog log) {
+        try {
+            // Create a temporary file location
+            // This creates a zero byte file which we should immediately delete
+            File tempFile = File.createTempFile("photo", p.getExtension(), p.getTargetFile().getParentFile());
+            tempFile.delete();
+            return tempFile;
+        } catch (IOException e) {
+            log.error("Failed to create temporary location for photo {} - {}", p.getFile().getAbsolutePath(),
+                    e.getMessage());
+            throw new OrganiseFailedException();
+        }
+    }
+
+    private void journalDone(Journal journal, JournalEntry entry, BufferedLog log) {
+        if (journal == null || entry == null)
+            return;
+        try {
+            journal.done(entry);
+        } catch (IOException e) {
+            log.error("Failed to write journal {} - {}", this.journalFile, e.getMessage());
+            throw new OrganiseFailedException();
+        }
+    }
+
+    private void syncJournal(Journal journal, BufferedLog log) {
+        if (journal == null || this.dryRun)
+            return;
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            log.error("Failed to sync journal {} - {}", this.journalFile, e.getMessage());
+            throw new OrganiseFailedException();
+        }
+    }
+
+    /**
+     * Resumes or rolls back an interrupted run recorded in the journal
+     * 
+     * @param journal
+     *            Journal
+     * @param metadataCache
+     *            Metadata cache, may be {@code null}
+     */
+    private void replayJournal(Journal journal, MetadataCache metadataCache) {
+        if (!journal.hasIncomplete()) {
+            LOGGER.info("Journal {} has no incomplete operations, nothing to {}", this.journalFile,
+                    this.resume ? "resume" : "roll back");
+            return;
+        } else if (this.dryRun) {
+            for (JournalEntry entry : journal.entries()) {
+                if (this.rollback || !entry.isDone())
+                    LOGGER.info("Would {} {}", this.resume ? "resume" : "roll back", entry);
             }
+            return;
         }
 
+        try {
+            int failed;
+            if (this.resume) {
+                LOGGER.info("Resuming {} incomplete operations from journal {}", journal.incompleteCount(),
+                        this.journalFile);
+                failed = journal.resume(metadataCache, new PhotoCopier(this.linkMode), this.hashAlgorithm);
+            } else {
+                LOGGER.info("Rolling back {} operations from journal {}", journal.entries().size(), this.journalFile);
+                failed = journal.rollback(metadataCache, this.hashAlgorithm);
+            }
+            if (failed > 0) {
+                LOGGER.error("Failed to {} {} operations, please resolve these manually", this.resume ? "resume" : "roll back",
+                        failed);
+                journal.close();
+                System.exit(1);
+            }
+            journal.complete();
+        } catch (IOException e) {
+            LOGGER.error("Failed to {} journal {} - {}", this.resume ? "resume" : "roll back", this.journalFile,
+                    e.getMessage());
+            System.exit(1);
+        }
     }
 
-    private void prepareGroups(Configuration config, Map<String, List<Photo>> groups) {
+    private void prepareGroups(Configuration config, Map<String, List<Photo>> groups, SequenceAllocator sequences) {
         File targetDir = this.target != null ? new File(this.target) : null;
         for (String bracket : groups.keySet()) {
             LOGGER.info("Group {} contains {} photos", bracket, groups.get(bracket).size());
@@ -591,90 +1361,163 @@ public class BabyPhotoSorter {
             File bracketDir = null;
             if (this.subfolders && targetDir != null) {
                 bracketDir = new File(targetDir, bracket);
-                if (bracketDir.exists() && bracketDir.isDirectory())
-                    continue;
-                if (!this.dryRun) {
-                    if (!bracketDir.mkdirs()) {
-                        LOGGER.error("Failed to create target directory {}", bracketDir.getAbsolutePath());
-                        System.exit(1);
+                if (!bracketDir.exists() || !bracketDir.isDirectory()) {
+                    if (!this.dryRun) {
+                        if (!bracketDir.mkdirs()) {
+                            LOGGER.error("Failed to create target directory {}", bracketDir.getAbsolutePath());
+                            System.exit(1);
+                        }
+                    } else {
+                        LOGGER.debug("Ensuring target directory {} exists", bracketDir.getAbsolutePath());
                     }
-                } else {
-                    LOGGER.debug("Ensuring target directory {} exists", bracketDir.getAbsolutePath());
                 }
             }
 
-            // Create sequence numbering
-            long id = 0;
-            // Determine the initial sequence number based on existing organised
-            // photos unless we're reorganising
-            if (bracketDir != null && !this.reorg) {
-                id += bracketDir.list(new ExtensionFilter(config)).length;
-                if (id > 0)
-                    LOGGER.debug("Target directory {} already has {} photos sorted into it", bracketDir, id);
+            // Create sequence numbering, when not reorganising the allocator
+            // has been seeded with the highest sequence ID used by existing
+            // organised photos
+            if (bracketDir != null && LOGGER.isDebugEnabled()) {
+                long existing = sequences.highWaterMark(bracketDir);
+                if (existing > 0)
+                    LOGGER.debug("Target directory {} already has photos sorted into it up to sequence ID {}",
+                            bracketDir, existing);
             }
-            for (Photo p : groups.get(bracket)) {
-                p.setSequenceId(++id);
+            if (this.stable) {
+                assignStableSequenceIds(config, bracket, groups.get(bracket), sequences);
+            } else if (bracketDir != null) {
+                for (Photo p : groups.get(bracket)) {
+                    p.setSequenceId(sequences.next(bracketDir));
+                }
+            } else {
+                // Organising in-place, photos from different source
+                // directories are numbered as a single sequence
+                long id = 0;
+                for (Photo p : groups.get(bracket)) {
+                    p.setSequenceId(++id);
+                }
             }
+        }
+    }
 
+    /**
+     * Assigns sequence IDs such that photos already correctly placed and named
+     * keep their existing sequence IDs, the remaining photos are given the next
+     * free sequence IDs for their target directory in creation date order
+     * 
+     * @param config
+     *            Configuration
+     * @param groupName
+     *            Group name
+     * @param ps
+     *            Photos in the group
+     * @param sequences
+     *            Sequence allocator, seeded with the highest sequence IDs of
+     *            previously organised photos
+     */
+    private void assignStableSequenceIds(Configuration config, String groupName, List<Photo> ps,
+            SequenceAllocator sequences) {
+        // Claimed sequence IDs for each target directory
+        Map<String, Set<Long>> claimed = new HashMap<>();
+        List<Photo> unassigned = new ArrayList<>();
+        for (Photo p : ps) {
+            File targetDir = getTargetDirectory(p, groupName);
+            long id = -1;
+            if (StringUtils.equals(p.getFile().getParentFile().getAbsolutePath(), targetDir.getAbsolutePath())) {
+                String name = p.getFile().getName();
+                id = config.namingPattern().parseSequenceId(p, config,
+                        name.substring(0, name.length() - p.getExtension().length()));
+            }
+            if (id > 0 && claimed.computeIfAbsent(targetDir.getAbsolutePath(), k -> new HashSet<>()).add(id)) {
+                p.setSequenceId(id);
+                sequences.claim(targetDir, id);
+            } else {
+                unassigned.add(p);
+            }
         }
+
+        for (Photo p : unassigned) {
+            p.setSequenceId(sequences.next(getTargetDirectory(p, groupName)));
+        }
+        LOGGER.debug("Group {} has {} photos keeping their existing sequence numbers, {} photos will be renumbered",
+                groupName, ps.size() - unassigned.size(), unassigned.size());
     }
 
-    private void deduplicatePhotos(Configuration config, Map<String, List<Photo>> groups) {
+    /**
+     * Gets the directory a photo will be placed in
+     * <p>
+     * This has to be calculated for each photo in case we are organising
+     * in-place and have multiple source directories
+     * </p>
+     * 
+     * @param p
+     *            Photo
+     * @param groupName
+     *            Name of the group the photo belongs to
+     * @return Target directory
+     */
+    private File getTargetDirectory(Photo p, String groupName) {
+        File targetDir = this.target != null ? new File(this.target) : p.getSourceDirectory();
+        if (this.subfolders) {
+            targetDir = new File(targetDir, groupName);
+        }
+        return targetDir;
+    }
 
-        for (Entry<String, List<Photo>> group : groups.entrySet()) {
-            Map<String, List<Photo>> photosByHash = new HashMap<>();
+    private void deduplicatePhotos(Configuration config, Map<String, List<Photo>> groups, List<Photo> photos) {
+        LOGGER.info("Checking for duplicates amongst {} photos", photos.size());
 
-            LOGGER.debug("Checking for duplicates in group {}", group.getKey());
-            for (Photo p : group.getValue()) {
-                String hash = p.fileHash();
-                if (!photosByHash.containsKey(hash)) {
-                    photosByHash.put(hash, new ArrayList<>());
-                }
-                photosByHash.get(hash).add(p);
-            }
+        List<DuplicateSet> duplicates = null;
+        try {
+            duplicates = new DuplicateFinder(this.hashAlgorithm, this.hashThreads).find(photos).getDuplicates();
+        } catch (InterruptedException | ExecutionException e) {
+            LOGGER.error("Failed to check for duplicate photos - {}", e.getMessage());
+            System.exit(1);
+        }
+        if (duplicates.isEmpty()) {
+            LOGGER.debug("No duplicates found");
+            return;
+        }
 
-            if (photosByHash.keySet().size() < group.getValue().size()) {
-                // Fewer hashes than photos so some duplicates
-                for (Entry<String, List<Photo>> hashGroup : photosByHash.entrySet()) {
-                    List<Photo> ps = hashGroup.getValue();
-                    if (ps.size() <= 1)
-                        continue;
+        Set<Photo> deleted = new HashSet<>();
+        for (DuplicateSet duplicateSet : duplicates) {
+            // Report the photos with the same hash
+            LOGGER.warn("{} Photos have the same file hash {}:", duplicateSet.photos().size(), duplicateSet.digest());
+            for (Photo p : duplicateSet.photos()) {
+                LOGGER.warn("  {}", p.getFile().getAbsolutePath());
+            }
 
-                    // Report the photos with the same hash
-                    LOGGER.warn("{} Photos have the same file hash {}:", ps.size(), hashGroup.getKey());
-                    for (Photo p : hashGroup.getValue()) {
-                        LOGGER.warn("  {}", p.getFile().getAbsolutePath());
+            // Delete the duplicates unless a dry run or keeping duplicates
+            if (!this.dryRun && !this.keepDuplicates) {
+                for (Photo toDelete : duplicateSet.duplicates()) {
+                    if (!this.allowDeletes) {
+                        confirmDeletions("duplicate photos");
                     }
 
-                    // Delete the duplicates unless a dry run or keeping
-                    // duplicates
-                    if (!this.dryRun && !this.keepDuplicates) {
-                        while (ps.size() > 1) {
-                            Photo toDelete = ps.get(1);
-
-                            if (!this.allowDeletes) {
-                                confirmDeletions("duplicate photos");
-                            }
-
-                            if (!toDelete.getFile().delete()) {
-                                LOGGER.error("Failed to delete duplicate file {}",
-                                        toDelete.getFile().getAbsolutePath());
-                                System.exit(1);
-                            }
-                            ps.remove(1);
-
-                            // Need to also remove the deleted photo from the
-                            // source group as otherwise subsequent steps may
-                            // incorrectly attempt to process the now deleted
-                            // photo
-                            group.getValue().remove(toDelete);
-                        }
+                    if (!toDelete.getFile().delete()) {
+                        LOGGER.error("Failed to delete duplicate file {}", toDelete.getFile().getAbsolutePath());
+                        System.exit(1);
                     }
+                    deleted.add(toDelete);
                 }
-            } else {
-                LOGGER.debug("No duplicates found in group {}", group.getKey());
             }
         }
+
+        // Need to also remove the deleted photos from their groups as
+        // otherwise subsequent steps may incorrectly attempt to process the now
+        // deleted photos
+        if (!deleted.isEmpty()) {
+            Set<String> affectedGroups = new HashSet<>();
+            for (Photo p : deleted) {
+                affectedGroups.add(p.getGroup());
+            }
+            for (String groupName : affectedGroups) {
+                List<Photo> group = groups.get(groupName);
+                group.removeIf(deleted::contains);
+                if (group.isEmpty())
+                    groups.remove(groupName);
+            }
+            LOGGER.info("Deleted {} duplicate photos", deleted.size());
+        }
     }
 
     private void confirmDeletions(String items) {
@@ -698,9 +1541,11 @@ public class BabyPhotoSorter {
     private Map<String, List<Photo>> groupPhotos(Configuration config, DateTimeFormatter dateFormat,
             List<Photo> photos) {
         Map<String, List<Photo>> groups = new LinkedHashMap<>();
+        // Photos are already sorted by creation date so can sweep the events
+        EventSweep sweep = config.events().sweep();
         for (Photo p : photos) {
             String group;
-            Event e = config.events().inEvent(p);
+            Event e = sweep.inEvent(p);
             if (e != null) {
                 group = e.name();
                 p.setEvent(e);
@@ -708,6 +1553,7 @@ public class BabyPhotoSorter {
             } else {
                 group = p.getAgeText(config);
             }
+            p.setGroup(group);
 
             if (LOGGER.isDebugEnabled())
                 LOGGER.debug("Photo {} has creation date {} and is in group {}", p.getFile().getAbsolutePath(),
@@ -719,7 +1565,16 @@ public class BabyPhotoSorter {
             groups.get(group).add(p);
         }
 
-        // Issue warnings for any events that don't have any photos in them
+        warnEmptyEvents(config);
+
+        LOGGER.info("Sorted {} photos into {} groups", photos.size(), groups.keySet().size());
+        return groups;
+    }
+
+    /**
+     * Issue warnings for any events that don't have any photos in them
+     */
+    private void warnEmptyEvents(Configuration config) {
         for (Event event : config.events().getEvents()) {
             if (event.size() == 0) {
                 LOGGER.warn(
@@ -727,109 +1582,117 @@ public class BabyPhotoSorter {
                         event.name(), event.start(), event.end());
             }
         }
+    }
 
-        LOGGER.info("Sorted {} photos into {} groups", photos.size(), groups.keySet().size());
-        return groups;
+    /**
+     * Discovers photos as a pipeline of stages connected by bounded queues
+     * <p>
+     * Each discovered photo is handed straight to the metadata extraction
+     * stage and, if de-duplicating, offered to the hashing stage, so that
+     * scanning directories, reading metadata and hashing possible duplicates
+     * all overlap rather than each waiting for the previous step to finish
+     * over the whole library. Each stage has its own threads, see
+     * {@code --scan-threads}, {@code --threads} and {@code --hash-threads}.
+     * </p>
+     * 
+     * @return Discovered photos, with their metadata extracted
+     */
+    private List<Photo> discoverAndExtract(Configuration config, PhotoCatalog catalog,
+            Collection<String> ignoredDirs, Map<String, Long> targetIndex) {
+        LOGGER.info("Extracting metadata of up to {} photos at once using {} threads as photos are discovered",
+                this.threads, IoThreads.isVirtual() ? "virtual" : "platform");
+        try (BoundedStage<Photo> extraction = new BoundedStage<>(this.threads, PIPELINE_CAPACITY,
+                Photo::creationDateMillis);
+                IncrementalHasher hasher = this.deduplicate
+                        ? new IncrementalHasher(this.hashAlgorithm, this.hashThreads, PIPELINE_CAPACITY)
+                        : null) {
+            PhotoSink sink = (file, attributes, sourceDirectory) -> {
+                Photo p = catalog.add(file, attributes, sourceDirectory);
+                try {
+                    extraction.accept(p);
+                    if (hasher != null)
+                        hasher.offer(p);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while discovering photos", e);
+                }
+                return p;
+            };
+            List<Photo> photos = discoverPhotos(config, sink, ignoredDirs, targetIndex);
+            extraction.complete();
+            if (hasher != null)
+                hasher.complete();
+            return photos;
+        } catch (InterruptedException | ExecutionException e) {
+            LOGGER.error("Failed to discover photos - {}", e.getMessage());
+            System.exit(1);
+            return null;
+        }
     }
 
-    private List<Photo> discoverPhotos(Configuration config, Collection<String> ignoredDirs) {
+    private List<Photo> discoverPhotos(Configuration config, PhotoSink sink, Collection<String> ignoredDirs,
+            Map<String, Long> targetIndex) {
         List<Photo> photos = new ArrayList<>();
-        ExtensionFilter extFilter = new ExtensionFilter(config);
-        for (String source : this.sources) {
-            if (source == null || source.length() == 0) {
-                continue;
-            }
-
-            File sourceDir = new File(source);
-            if (!sourceDir.isDirectory()) {
-                LOGGER.error("Source {} is not a directory", source);
-            }
-            if (ignoredDirs.contains(sourceDir.getAbsolutePath())) {
-                LOGGER.warn("Ignoring directory {} as requested", sourceDir.getAbsolutePath());
-                continue;
-            }
-
-            LOGGER.info("Scanning source directory {}", sourceDir.getAbsolutePath());
-
-            int found = scanDirectory(sourceDir, extFilter, photos, sourceDir);
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Source directory {} contained {} photos", sourceDir.getAbsolutePath(), found);
-            }
+        try (PhotoScanner scanner = new PhotoScanner(config, sink, ignoredDirs, this.scanThreads)) {
+            for (String source : this.sources) {
+                if (source == null || source.length() == 0) {
+                    continue;
+                }
 
-            // If reorganising and no explicit target also scan sub-directories
-            // of the source directory (if using sub-folders)
-            if (this.reorg && this.target == null && this.subfolders) {
-                found += scanSubDirectories(ignoredDirs, photos, extFilter, sourceDir, false, sourceDir);
-            }
-        }
+                File sourceDir = new File(source);
+                if (!sourceDir.isDirectory()) {
+                    LOGGER.error("Source {} is not a directory", source);
+                }
+                if (ignoredDirs.contains(sourceDir.getAbsolutePath())) {
+                    LOGGER.warn("Ignoring directory {} as requested", sourceDir.getAbsolutePath());
+                    continue;
+                }
 
-        // When reorganising scan the target directory (if it exists) and any
-        // sub-directories thereof
-        if (this.reorg && this.target != null) {
-            File targetDir = new File(this.target);
+                LOGGER.info("Scanning source directory {}", sourceDir.getAbsolutePath());
 
-            if (ignoredDirs.contains(targetDir.getAbsolutePath())) {
-                LOGGER.warn("Ignoring target directory {} as requested, reorganisation may be ineffectual as a result",
-                        targetDir.getAbsolutePath());
-            } else {
-                if (targetDir.exists() && targetDir.isDirectory()) {
-                    LOGGER.info("Scanning target directory {} for reorganisation", targetDir.getAbsolutePath());
-                    int found = scanDirectory(targetDir, extFilter, photos, targetDir);
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Target directory {} contained {} photos", targetDir.getAbsolutePath(), found);
-                    }
-
-                    if (this.subfolders) {
-                        found += scanSubDirectories(ignoredDirs, photos, extFilter, targetDir, true, targetDir);
-                    }
+                // If reorganising and no explicit target also scan
+                // sub-directories of the source directory (if using
+                // sub-folders)
+                boolean recurse = this.reorg && this.target == null && this.subfolders;
+                List<Photo> found = scanner.scan(sourceDir, sourceDir, recurse, false);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Source directory {} contained {} photos", sourceDir.getAbsolutePath(), found.size());
                 }
+                photos.addAll(found);
             }
-        }
 
-        return photos;
-    }
+            // When reorganising scan the target directory (if it exists) and
+            // any sub-directories thereof
+            if (this.reorg && this.target != null) {
+                File targetDir = new File(this.target);
 
-    private int scanSubDirectories(Collection<String> ignoredDirs, List<Photo> photos, ExtensionFilter extFilter,
-            File sourceDir, boolean wasTargetDir, File originalSourceDirectory) {
-        int found = 0;
-        for (File subdir : sourceDir.listFiles(new SubdirectoryFilter())) {
-            if (ignoredDirs.contains(subdir.getAbsolutePath())) {
-                if (wasTargetDir) {
+                if (ignoredDirs.contains(targetDir.getAbsolutePath())) {
                     LOGGER.warn(
-                            "Ignoring target sub-directory {} as requested, reorganisation may be ineffectual as a result",
-                            subdir.getAbsolutePath());
+                            "Ignoring target directory {} as requested, reorganisation may be ineffectual as a result",
+                            targetDir.getAbsolutePath());
                 } else {
-                    LOGGER.warn("Ignoring sub-directory {} as requested", subdir.getAbsolutePath());
+                    if (targetDir.exists() && targetDir.isDirectory()) {
+                        LOGGER.info("Scanning target directory {} for reorganisation", targetDir.getAbsolutePath());
+                        List<Photo> found = scanner.scan(targetDir, targetDir, this.subfolders, true);
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("Target directory {} contained {} photos", targetDir.getAbsolutePath(),
+                                    found.size());
+                        }
+                        photos.addAll(found);
+                    }
+                }
+            } else if (this.target != null && this.subfolders) {
+                // When adding to an existing target index the sequence IDs
+                // already used in its sub-directories so that new photos are
+                // numbered after them
+                File targetDir = new File(this.target);
+                if (targetDir.isDirectory()) {
+                    targetIndex.putAll(scanner.index(targetDir));
                 }
-                continue;
-            }
-
-            LOGGER.info("Scanning sub-directory {} for reorganisation", subdir.getAbsolutePath());
-            found += scanDirectory(subdir, extFilter, photos, originalSourceDirectory);
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Sub-directory {} contained {} photos", subdir.getAbsolutePath(), found);
             }
-
-            found += scanSubDirectories(ignoredDirs, photos, extFilter, subdir, wasTargetDir, originalSourceDirectory);
         }
-        return found;
-    }
 
-    private int scanDirectory(File sourceDir, FilenameFilter filter, List<Photo> photos, File originalSourceDirectory) {
-        int found = 0;
-        for (File f : sourceDir.listFiles(filter)) {
-            // Ignore and delete zero-length files
-            if (f.length() == 0) {
-                f.delete();
-                continue;
-            }
-
-            Photo p = new Photo(f);
-            p.setSourceDirectory(originalSourceDirectory);
-            photos.add(p);
-            found++;
-        }
-        return found;
+        return photos;
     }
 
 }
@@ -0,0 +1,143 @@
+package com.github.rvesse.baby.photo.sorter.cache;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+import com.github.rvesse.baby.photo.sorter.model.CreationDateSource;
+
+/**
+ * Cached metadata for a single photo
+ * <p>
+ * Entries are immutable, updating an entry produces a new entry. An entry is
+ * only considered valid for a file if the size, last modified time and file
+ * key (inode on most file systems) all match.
+ * </p>
+ */
+public class CachedMetadata {
+
+    /**
+     * Value used for {@link #creationDate()} when no creation date is cached
+     */
+    public static final long NO_CREATION_DATE = Long.MIN_VALUE;
+
+    private final long size, lastModified;
+    private final String fileKey;
+    private final long creationDate;
+    private final CreationDateSource source;
+    private final String hashAlgorithm;
+    private final byte[] hash;
+
+    public CachedMetadata(long size, long lastModified, String fileKey, long creationDate, CreationDateSource source,
+            String hashAlgorithm, byte[] hash) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey != null ? fileKey : "";
+        this.creationDate = creationDate;
+        this.source = source;
+        this.hashAlgorithm = hashAlgorithm;
+        this.hash = hash;
+    }
+
+    /**
+     * Creates an empty entry for a file with the given size, last modified
+     * time and file key
+     *
+     * @param size
+     *            Size in bytes
+     * @param lastModified
+     *            Last modified time as milliseconds since the epoch
+     * @param fileKey
+     *            File key as returned by {@link #fileKey(BasicFileAttributes)}
+     * @return Empty entry
+     */
+    static CachedMetadata forFile(long size, long lastModified, String fileKey) {
+        return new CachedMetadata(size, lastModified, fileKey, NO_CREATION_DATE, null, null, null);
+    }
+
+    /**
+     * Gets the file key of a file in the form stored in cache entries
+     *
+     * @param attributes
+     *            File attributes
+     * @return File key, empty if the file system does not provide one
+     */
+    public static String fileKey(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : "";
+    }
+
+    /**
+     * Gets whether this entry is valid for a file with the given size, last
+     * modified time and file key
+     *
+     * @param size
+     *            Size in bytes
+     * @param lastModified
+     *            Last modified time as milliseconds since the epoch
+     * @param fileKey
+     *            File key as returned by {@link #fileKey(BasicFileAttributes)}
+     * @return True if valid, false if stale
+     */
+    public boolean isValidFor(long size, long lastModified, String fileKey) {
+        return this.size == size && this.lastModified == lastModified
+                && Objects.equals(this.fileKey, fileKey != null ? fileKey : "");
+    }
+
+    public long size() {
+        return this.size;
+    }
+
+    public long lastModified() {
+        return this.lastModified;
+    }
+
+    public String fileKey() {
+        return this.fileKey;
+    }
+
+    public boolean hasCreationDate() {
+        return this.source != null;
+    }
+
+    /**
+     * Gets the cached creation date as milliseconds since the epoch
+     *
+     * @return Creation date or {@link #NO_CREATION_DATE} if not cached
+     */
+    public long creationDate() {
+        return this.creationDate;
+    }
+
+    public CreationDateSource creationDateSource() {
+        return this.source;
+    }
+
+    /**
+     * Gets whether a hash calculated with the given algorithm is cached
+     *
+     * @param algorithm
+     *            Hash algorithm name
+     * @return True if cached, false otherwise
+     */
+    public boolean hasHash(String algorithm) {
+        return this.hash != null && Objects.equals(this.hashAlgorithm, algorithm);
+    }
+
+    public String hashAlgorithm() {
+        return this.hashAlgorithm;
+    }
+
+    public byte[] hash() {
+        return this.hash;
+    }
+
+    CachedMetadata withCreationDate(long creationDate, CreationDateSource source) {
+        return new CachedMetadata(this.size, this.lastModified, this.fileKey, creationDate, source,
+                this.hashAlgorithm, this.hash);
+    }
+
+    CachedMetadata withHash(String algorithm, byte[] hash) {
+        return new CachedMetadata(this.size, this.lastModified, this.fileKey, this.creationDate, this.source,
+                algorithm, hash);
+    }
+}
@@ -0,0 +1,393 @@
+package com.github.rvesse.baby.photo.sorter.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.rvesse.baby.photo.sorter.model.CreationDateSource;
+
+/**
+ * A persistent cache of photo metadata
+ * <p>
+ * Allows creation dates and file hashes calculated by previous runs to be
+ * reused provided the photo has not changed since. Entries are keyed by
+ * absolute path and validated against the size, last modified time and file
+ * key (inode) of the photo, stale entries are evicted upon lookup.
+ * </p>
+ * <p>
+ * The cache is persisted as an append-only binary log where each update appends
+ * a record and later records supersede earlier ones. Each update changes the
+ * in-memory entry and appends its record while holding the cache's lock, so
+ * concurrent updates to the same photo, e.g. its creation date and its hash,
+ * are logged in the same order they were applied. When the log contains
+ * significantly more records than live entries, or was found to be truncated
+ * by a previous crash, it is compacted by rewriting only the live entries.
+ * </p>
+ */
+public class MetadataCache implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+
+    private static final int MAGIC = 0x42505343; // BPSC
+    private static final int VERSION = 1;
+    private static final byte RECORD_PUT = 1, RECORD_REMOVE = 2;
+    private static final int COMPACTION_MIN_RECORDS = 1024;
+    private static final int COMPACTION_RATIO = 2;
+
+    private final File file;
+    private final Map<String, CachedMetadata> entries = new ConcurrentHashMap<>();
+    private DataOutputStream log;
+    private long records = 0;
+    private boolean requiresCompaction = false, closed = false;
+
+    private MetadataCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens a metadata cache, creating it if it does not exist
+     *
+     * @param file
+     *            Cache file
+     * @return Metadata cache
+     * @throws IOException
+     *             Thrown if the cache cannot be opened
+     */
+    public static MetadataCache open(File file) throws IOException {
+        MetadataCache cache = new MetadataCache(file);
+        if (file.exists()) {
+            cache.load();
+        }
+        if (cache.requiresCompaction) {
+            cache.compact();
+        }
+        cache.openLog();
+        LOGGER.info("Loaded {} entries from metadata cache {}", cache.entries.size(), file.getAbsolutePath());
+        return cache;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(this.file), 64 * 1024))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                LOGGER.warn("Metadata cache {} is not in a recognised format, it will be replaced",
+                        this.file.getAbsolutePath());
+                this.requiresCompaction = true;
+                return;
+            }
+
+            while (true) {
+                int type = input.read();
+                if (type == -1)
+                    break;
+                this.records++;
+                switch (type) {
+                case RECORD_PUT:
+                    String path = input.readUTF();
+                    this.entries.put(path, readEntry(input));
+                    break;
+                case RECORD_REMOVE:
+                    this.entries.remove(input.readUTF());
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // A previous run was interrupted part way through writing a record,
+            // compact to discard the partial record
+            LOGGER.warn("Metadata cache {} was truncated, the last record will be discarded",
+                    this.file.getAbsolutePath());
+            this.requiresCompaction = true;
+        } catch (IOException e) {
+            LOGGER.warn("Metadata cache {} is corrupt after {} records, remaining records will be discarded - {}",
+                    this.file.getAbsolutePath(), this.records, e.getMessage());
+            this.requiresCompaction = true;
+        }
+    }
+
+    private static CachedMetadata readEntry(DataInputStream input) throws IOException {
+        long size = input.readLong();
+        long lastModified = input.readLong();
+        String fileKey = input.readUTF();
+        long creationDate = input.readLong();
+        int sourceOrdinal = input.readByte();
+        CreationDateSource source = sourceOrdinal >= 0 ? CreationDateSource.values()[sourceOrdinal] : null;
+        String hashAlgorithm = input.readUTF();
+        byte[] hash = null;
+        int hashLength = input.readUnsignedShort();
+        if (hashLength > 0) {
+            hash = new byte[hashLength];
+            input.readFully(hash);
+        }
+        return new CachedMetadata(size, lastModified, fileKey, creationDate, source,
+                hashAlgorithm.isEmpty() ? null : hashAlgorithm, hash);
+    }
+
+    private static void writeEntry(DataOutputStream output, String path, CachedMetadata entry) throws IOException {
+        output.writeByte(RECORD_PUT);
+        output.writeUTF(path);
+        output.writeLong(entry.size());
+        output.writeLong(entry.lastModified());
+        output.writeUTF(entry.fileKey());
+        output.writeLong(entry.creationDate());
+        output.writeByte(entry.creationDateSource() != null ? entry.creationDateSource().ordinal() : -1);
+        output.writeUTF(entry.hashAlgorithm() != null ? entry.hashAlgorithm() : "");
+        byte[] hash = entry.hash();
+        output.writeShort(hash != null ? hash.length : 0);
+        if (hash != null)
+            output.write(hash);
+    }
+
+    private void openLog() throws IOException {
+        boolean isNew = !this.file.exists() || this.file.length() == 0;
+        this.log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true), 64 * 1024));
+        if (isNew) {
+            this.log.writeInt(MAGIC);
+            this.log.writeInt(VERSION);
+        }
+    }
+
+    /**
+     * Gets the cached metadata for a photo
+     *
+     * @param file
+     *            Photo file
+     * @param size
+     *            Current size of the photo file
+     * @param lastModified
+     *            Current last modified time of the photo file as milliseconds
+     *            since the epoch
+     * @param fileKey
+     *            Current file key of the photo file as returned by
+     *            {@link CachedMetadata#fileKey(BasicFileAttributes)}
+     * @return Cached metadata, or {@code null} if none or the cached entry was
+     *         stale
+     */
+    public CachedMetadata get(File file, long size, long lastModified, String fileKey) {
+        String path = file.getAbsolutePath();
+        CachedMetadata entry = this.entries.get(path);
+        if (entry == null)
+            return null;
+        if (!entry.isValidFor(size, lastModified, fileKey)) {
+            LOGGER.debug("Evicting stale metadata cache entry for photo {}", path);
+            synchronized (this) {
+                if (this.entries.remove(path, entry))
+                    append(path, null);
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches the creation date for a photo
+     *
+     * @param file
+     *            Photo file
+     * @param attributes
+     *            Current attributes of the photo file
+     * @param creationDate
+     *            Creation date as milliseconds since the epoch
+     * @param source
+     *            Source of the creation date
+     */
+    public void putCreationDate(File file, BasicFileAttributes attributes, long creationDate,
+            CreationDateSource source) {
+        putCreationDate(file, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                CachedMetadata.fileKey(attributes), creationDate, source);
+    }
+
+    /**
+     * Caches the creation date for a photo
+     *
+     * @param file
+     *            Photo file
+     * @param size
+     *            Current size of the photo file
+     * @param lastModified
+     *            Current last modified time of the photo file as milliseconds
+     *            since the epoch
+     * @param fileKey
+     *            Current file key of the photo file
+     * @param creationDate
+     *            Creation date as milliseconds since the epoch
+     * @param source
+     *            Source of the creation date
+     */
+    public void putCreationDate(File file, long size, long lastModified, String fileKey, long creationDate,
+            CreationDateSource source) {
+        String path = file.getAbsolutePath();
+        synchronized (this) {
+            CachedMetadata entry = this.entries.compute(path,
+                    (k, v) -> (v != null && v.isValidFor(size, lastModified, fileKey) ? v
+                            : CachedMetadata.forFile(size, lastModified, fileKey)).withCreationDate(creationDate,
+                                    source));
+            append(path, entry);
+        }
+    }
+
+    /**
+     * Caches the hash for a photo
+     *
+     * @param file
+     *            Photo file
+     * @param attributes
+     *            Current attributes of the photo file
+     * @param algorithm
+     *            Hash algorithm name
+     * @param hash
+     *            Hash
+     */
+    public void putHash(File file, BasicFileAttributes attributes, String algorithm, byte[] hash) {
+        putHash(file, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                CachedMetadata.fileKey(attributes), algorithm, hash);
+    }
+
+    /**
+     * Caches the hash for a photo
+     *
+     * @param file
+     *            Photo file
+     * @param size
+     *            Current size of the photo file
+     * @param lastModified
+     *            Current last modified time of the photo file as milliseconds
+     *            since the epoch
+     * @param fileKey
+     *            Current file key of the photo file
+     * @param algorithm
+     *            Hash algorithm name
+     * @param hash
+     *            Hash
+     */
+    public void putHash(File file, long size, long lastModified, String fileKey, String algorithm, byte[] hash) {
+        String path = file.getAbsolutePath();
+        synchronized (this) {
+            CachedMetadata entry = this.entries.compute(path,
+                    (k, v) -> (v != null && v.isValidFor(size, lastModified, fileKey) ? v
+                            : CachedMetadata.forFile(size, lastModified, fileKey)).withHash(algorithm, hash));
+            append(path, entry);
+        }
+    }
+
+    /**
+     * Records that a photo has been moved
+     * <p>
+     * Moves preserve the size, last modified time and file key of a photo so
+     * the cached metadata remains valid under the new path.
+     * </p>
+     *
+     * @param from
+     *            Old location
+     * @param to
+     *            New location
+     */
+    public synchronized void relocate(File from, File to) {
+        String fromPath = from.getAbsolutePath();
+        CachedMetadata entry = this.entries.remove(fromPath);
+        if (entry == null)
+            return;
+        String toPath = to.getAbsolutePath();
+        this.entries.put(toPath, entry);
+        append(fromPath, null);
+        append(toPath, entry);
+    }
+
+    /**
+     * Appends a record to the log, callers must hold the cache's lock and have
+     * already applied the update to the in-memory entries
+     */
+    private void append(String path, CachedMetadata entry) {
+        if (this.log == null)
+            return;
+        try {
+            if (entry != null) {
+                writeEntry(this.log, path, entry);
+            } else {
+                this.log.writeByte(RECORD_REMOVE);
+                this.log.writeUTF(path);
+            }
+            this.records++;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to update metadata cache {}, further updates will not be persisted - {}",
+                    this.file.getAbsolutePath(), e.getMessage());
+            closeLog();
+        }
+    }
+
+    private void closeLog() {
+        try {
+            if (this.log != null)
+                this.log.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close metadata cache {} - {}", this.file.getAbsolutePath(), e.getMessage());
+        }
+        this.log = null;
+    }
+
+    /**
+     * Rewrites the cache file so that it contains only live entries
+     * <p>
+     * Entries for photos that no longer exist are evicted at this point.
+     * </p>
+     *
+     * @throws IOException
+     *             Thrown if the cache cannot be rewritten
+     */
+    private void compact() throws IOException {
+        File temp = new File(this.file.getAbsolutePath() + ".tmp");
+        int evicted = 0;
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            for (Entry<String, CachedMetadata> e : this.entries.entrySet()) {
+                if (!new File(e.getKey()).exists()) {
+                    this.entries.remove(e.getKey());
+                    evicted++;
+                    continue;
+                }
+                writeEntry(output, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.records = this.entries.size();
+        this.requiresCompaction = false;
+        LOGGER.debug("Compacted metadata cache {} to {} entries, evicted {} entries for missing photos",
+                this.file.getAbsolutePath(), this.entries.size(), evicted);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+        closeLog();
+        if (this.records > COMPACTION_MIN_RECORDS && this.records > (long) this.entries.size() * COMPACTION_RATIO) {
+            try {
+                compact();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to compact metadata cache {} - {}", this.file.getAbsolutePath(),
+                        e.getMessage());
+            }
+        }
+    }
+}
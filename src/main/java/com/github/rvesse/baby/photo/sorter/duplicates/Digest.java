@@ -0,0 +1,45 @@
+package com.github.rvesse.baby.photo.sorter.duplicates;
+
+import java.util.Arrays;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * A binary file digest suitable for use as a map key
+ */
+public class Digest {
+
+    private final byte[] value;
+    private final int hashCode;
+
+    public Digest(byte[] value) {
+        if (value == null)
+            throw new NullPointerException("value cannot be null");
+        this.value = value;
+        this.hashCode = Arrays.hashCode(value);
+    }
+
+    public byte[] value() {
+        return this.value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof Digest))
+            return false;
+        Digest otherDigest = (Digest) other;
+        return this.hashCode == otherDigest.hashCode && Arrays.equals(this.value, otherDigest.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return Hex.encodeHexString(this.value);
+    }
+}
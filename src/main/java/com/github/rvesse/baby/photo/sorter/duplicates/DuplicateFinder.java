@@ -0,0 +1,102 @@
+package com.github.rvesse.baby.photo.sorter.duplicates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.rvesse.baby.photo.sorter.hashing.HashAlgorithm;
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+import com.github.rvesse.baby.photo.sorter.utils.Parallel;
+
+/**
+ * Finds duplicate photos across an entire library
+ * <p>
+ * Uses a tiered approach, only photos of identical size can possibly be
+ * duplicates so photos are first bucketed by size. Photos that share a size
+ * are then compared by their {@link Photo#partialHash(HashAlgorithm)} and only
+ * those whose partial hashes collide have their full
+ * {@link Photo#fileHash(HashAlgorithm)} calculated.
+ * Thus the vast majority of photos are never read at all and most of the
+ * remainder only have a small portion read. Hashing is done in parallel.
+ * </p>
+ */
+public class DuplicateFinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateFinder.class);
+
+    private final HashAlgorithm algorithm;
+    private final int threads;
+
+    /**
+     * Creates a new finder
+     * 
+     * @param algorithm
+     *            Hash algorithm
+     * @param threads
+     *            Number of threads to use for hashing
+     */
+    public DuplicateFinder(HashAlgorithm algorithm, int threads) {
+        this.algorithm = algorithm;
+        this.threads = threads;
+    }
+
+    /**
+     * Finds duplicates amongst the given photos
+     * 
+     * @param photos
+     *            Photos
+     * @return Index of photos that could potentially be duplicates
+     * @throws ExecutionException
+     *             Thrown if hashing fails
+     * @throws InterruptedException
+     *             Thrown if interrupted while hashing
+     */
+    public DuplicateIndex find(List<Photo> photos) throws ExecutionException, InterruptedException {
+        // Bucket by size
+        Map<Long, List<Photo>> photosBySize = new HashMap<>();
+        for (Photo p : photos) {
+            photosBySize.computeIfAbsent(p.getSize(), s -> new ArrayList<>(1)).add(p);
+        }
+        List<Photo> sameSize = new ArrayList<>();
+        for (List<Photo> bucket : photosBySize.values()) {
+            if (bucket.size() > 1)
+                sameSize.addAll(bucket);
+        }
+        LOGGER.debug("{} of {} photos share their size with another photo", sameSize.size(), photos.size());
+
+        // Compare by partial hash
+        Parallel.forEach(sameSize, this.threads, p -> p.partialHash(this.algorithm));
+        Map<Long, Map<Digest, List<Photo>>> photosByPartialHash = new LinkedHashMap<>();
+        for (Photo p : sameSize) {
+            byte[] partialHash = p.partialHash(this.algorithm);
+            if (partialHash == null)
+                continue;
+            photosByPartialHash.computeIfAbsent(p.getSize(), s -> new HashMap<>())
+                    .computeIfAbsent(new Digest(partialHash), h -> new ArrayList<>(1)).add(p);
+        }
+        List<Photo> samePartialHash = new ArrayList<>();
+        for (Map<Digest, List<Photo>> buckets : photosByPartialHash.values()) {
+            for (List<Photo> bucket : buckets.values()) {
+                if (bucket.size() > 1)
+                    samePartialHash.addAll(bucket);
+            }
+        }
+        LOGGER.debug("{} photos share their partial hash with another photo of the same size",
+                samePartialHash.size());
+
+        // Compare by full hash
+        DuplicateIndex index = new DuplicateIndex();
+        Parallel.forEach(samePartialHash, this.threads, p -> {
+            byte[] hash = p.fileHash(this.algorithm);
+            if (hash != null)
+                index.add(p, hash);
+        });
+        return index;
+    }
+}
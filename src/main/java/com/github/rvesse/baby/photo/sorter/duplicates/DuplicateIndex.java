@@ -0,0 +1,84 @@
+package com.github.rvesse.baby.photo.sorter.duplicates;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.rvesse.baby.photo.sorter.files.CreationDateComparator;
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+
+/**
+ * A library wide index of photos by digest
+ * <p>
+ * Safe for concurrent inserts so it may be populated by parallel hashing. Most
+ * digests are expected to be unique so a lone photo is stored directly and a
+ * list is only allocated once a second photo with the same digest is seen.
+ * </p>
+ * <p>
+ * Which copy of a duplicated photo is kept is deterministic regardless of
+ * insertion order, the earliest photo by creation date is kept with ties broken
+ * by file path.
+ * </p>
+ */
+public class DuplicateIndex {
+
+    private static final Comparator<Photo> KEEP_ORDER = new CreationDateComparator()
+            .thenComparing(Photo::getFile);
+
+    private final ConcurrentMap<Digest, Object> photosByDigest = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a photo to the index
+     * 
+     * @param photo
+     *            Photo
+     * @param digest
+     *            Digest of the photo
+     */
+    @SuppressWarnings("unchecked")
+    public void add(Photo photo, byte[] digest) {
+        this.photosByDigest.merge(new Digest(digest), photo, (existing, added) -> {
+            List<Photo> photos;
+            if (existing instanceof Photo) {
+                photos = new ArrayList<>(2);
+                photos.add((Photo) existing);
+            } else {
+                photos = (List<Photo>) existing;
+            }
+            photos.add((Photo) added);
+            return photos;
+        });
+    }
+
+    /**
+     * Gets the number of distinct digests in the index
+     * 
+     * @return Distinct digests
+     */
+    public int size() {
+        return this.photosByDigest.size();
+    }
+
+    /**
+     * Gets the sets of duplicate photos
+     * 
+     * @return Duplicate sets ordered by the photo that is kept from each set
+     */
+    @SuppressWarnings("unchecked")
+    public List<DuplicateSet> getDuplicates() {
+        List<DuplicateSet> duplicates = new ArrayList<>();
+        for (Entry<Digest, Object> entry : this.photosByDigest.entrySet()) {
+            if (entry.getValue() instanceof Photo)
+                continue;
+
+            List<Photo> photos = new ArrayList<>((List<Photo>) entry.getValue());
+            photos.sort(KEEP_ORDER);
+            duplicates.add(new DuplicateSet(entry.getKey(), photos));
+        }
+        duplicates.sort((a, b) -> KEEP_ORDER.compare(a.kept(), b.kept()));
+        return duplicates;
+    }
+}
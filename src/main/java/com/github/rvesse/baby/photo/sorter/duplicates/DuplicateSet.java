@@ -0,0 +1,51 @@
+package com.github.rvesse.baby.photo.sorter.duplicates;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+
+/**
+ * A set of photos that all have the same digest
+ */
+public class DuplicateSet {
+
+    private final Digest digest;
+    private final List<Photo> photos;
+
+    DuplicateSet(Digest digest, List<Photo> photos) {
+        this.digest = digest;
+        this.photos = Collections.unmodifiableList(photos);
+    }
+
+    public Digest digest() {
+        return this.digest;
+    }
+
+    /**
+     * Gets all the photos in the set, the first of which is the copy to keep
+     * 
+     * @return Photos
+     */
+    public List<Photo> photos() {
+        return this.photos;
+    }
+
+    /**
+     * Gets the copy of the photo to keep
+     * 
+     * @return Photo to keep
+     */
+    public Photo kept() {
+        return this.photos.get(0);
+    }
+
+    /**
+     * Gets the redundant copies of the photo
+     * 
+     * @return Redundant photos
+     */
+    public List<Photo> duplicates() {
+        return this.photos.subList(1, this.photos.size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.rvesse.baby.photo.sorter.duplicates;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.rvesse.baby.photo.sorter.hashing.HashAlgorithm;
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+import com.github.rvesse.baby.photo.sorter.pipeline.BoundedStage;
+
+/**
+ * Hashes photos that could be duplicates as they are discovered
+ * <p>
+ * Applies the same tiers as {@link DuplicateFinder} incrementally. The first
+ * photo of each size is only remembered, as soon as a second photo of that
+ * size is offered both have their partial hash calculated. Likewise the first
+ * photo with a given partial hash is only remembered until another photo of
+ * the same size and partial hash turns up, at which point both have their full
+ * hash calculated. Hashes are cached on the photos so that once discovery is
+ * complete the {@link DuplicateFinder} has little or no hashing left to do,
+ * while the photos it finds are exactly the same as if nothing had been hashed
+ * in advance.
+ * </p>
+ */
+public class IncrementalHasher implements AutoCloseable {
+
+    private final HashAlgorithm algorithm;
+    private final Map<Long, AtomicReference<Photo>> bySize = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Digest, AtomicReference<Photo>>> byPartialHash = new ConcurrentHashMap<>();
+    private final BoundedStage<Photo> hashing;
+
+    /**
+     * Creates a new hasher
+     *
+     * @param algorithm
+     *            Hash algorithm
+     * @param threads
+     *            Number of threads to use for hashing
+     * @param capacity
+     *            Maximum number of photos waiting to be hashed
+     */
+    public IncrementalHasher(HashAlgorithm algorithm, int threads, int capacity) {
+        this.algorithm = algorithm;
+        this.hashing = new BoundedStage<>(threads, capacity, this::hash);
+    }
+
+    /**
+     * Offers a discovered photo, it is hashed only if it could be a duplicate
+     * of a photo already offered
+     *
+     * @param p
+     *            Photo
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting to queue the photo for
+     *             hashing
+     */
+    public void offer(Photo p) throws InterruptedException {
+        Photo first = collide(this.bySize, p.getSize(), p);
+        if (first == null)
+            return;
+        if (first != p)
+            this.hashing.accept(first);
+        this.hashing.accept(p);
+    }
+
+    private void hash(Photo p) {
+        byte[] partialHash = p.partialHash(this.algorithm);
+        if (partialHash == null)
+            return;
+        Map<Digest, AtomicReference<Photo>> sameSize = this.byPartialHash.computeIfAbsent(p.getSize(),
+                s -> new ConcurrentHashMap<>());
+        Photo first = collide(sameSize, new Digest(partialHash), p);
+        if (first == null)
+            return;
+        if (first != p)
+            first.fileHash(this.algorithm);
+        p.fileHash(this.algorithm);
+    }
+
+    /**
+     * Records a photo against a key
+     * 
+     * @return {@code null} if this is the first photo with the key, the first
+     *         photo if this is the first collision on the key, otherwise the
+     *         photo itself
+     */
+    private static <K> Photo collide(Map<K, AtomicReference<Photo>> photos, K key, Photo p) {
+        AtomicReference<Photo> existing = photos.putIfAbsent(key, new AtomicReference<>(p));
+        if (existing == null)
+            return null;
+        Photo first = existing.getAndSet(null);
+        return first != null ? first : p;
+    }
+
+    /**
+     * Waits for all photos queued for hashing to be hashed
+     *
+     * @throws ExecutionException
+     *             Thrown if hashing fails
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting
+     */
+    public void complete() throws ExecutionException, InterruptedException {
+        this.hashing.complete();
+        this.bySize.clear();
+        this.byPartialHash.clear();
+    }
+
+    @Override
+    public void close() {
+        this.hashing.close();
+    }
+}
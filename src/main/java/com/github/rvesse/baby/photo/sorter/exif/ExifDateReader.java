@@ -0,0 +1,254 @@
+package com.github.rvesse.baby.photo.sorter.exif;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fast reader that extracts only the EXIF date tags from JPEG and TIFF files
+ * <p>
+ * Rather than building the full metadata tree this reader walks the file
+ * structure directly, for JPEG files it scans the markers until it finds the
+ * EXIF {@code APP1} segment and for TIFF files it starts directly from the
+ * header. In both cases only {@code IFD0} and the EXIF sub-IFD it points to
+ * are examined. All reads go through a small bounded window over the file so
+ * typically only the first few KiB of a file are ever read.
+ * </p>
+ * <p>
+ * If the file is not a JPEG/TIFF file, or its structure is not as expected,
+ * then the reader is unable to decide and returns {@code null}, callers should
+ * then fall back to a full metadata parser.
+ * </p>
+ */
+public class ExifDateReader implements Closeable {
+
+    private static final int WINDOW_SIZE = 8 * 1024;
+    private static final int MAX_IFD_ENTRIES = 1024;
+
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+    private static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_IFD = 13;
+
+    private static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+
+    private final FileChannel channel;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart = 0, limit;
+    private long tiffBase = 0;
+
+    private ExifDateReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.limit = this.channel.size();
+        this.window.limit(0);
+    }
+
+    /**
+     * Reads the EXIF dates from a file
+     *
+     * @param path
+     *            File
+     * @return EXIF dates, {@link ExifDates#NONE} if the file was read
+     *         successfully but contained no EXIF dates or {@code null} if
+     *         unable to decide
+     * @throws IOException
+     *             Thrown if the file cannot be read
+     */
+    public static ExifDates read(Path path) throws IOException {
+        try (ExifDateReader reader = new ExifDateReader(path)) {
+            return reader.read();
+        }
+    }
+
+    private ExifDates read() throws IOException {
+        if (this.limit < 8)
+            return null;
+
+        int start = getUnsignedShort(0, ByteOrder.BIG_ENDIAN);
+        if (start == 0xFFD8) {
+            return readJpeg();
+        } else if (start == 0x4949 || start == 0x4D4D) {
+            return readTiff();
+        }
+        return null;
+    }
+
+    private ExifDates readJpeg() throws IOException {
+        long pos = 2;
+        while (pos + 4 <= this.limit) {
+            if (getUnsignedByte(pos) != 0xFF)
+                return null;
+            int marker = getUnsignedByte(pos + 1);
+            if (marker == 0xFF) {
+                // Fill byte
+                pos++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // Stand-alone markers with no length
+                pos += 2;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                // Start of scan or end of image, no EXIF segment present
+                return ExifDates.NONE;
+            }
+
+            int length = getUnsignedShort(pos + 2, ByteOrder.BIG_ENDIAN);
+            if (length < 2)
+                return null;
+            if (marker == 0xE1 && length >= 2 + EXIF_HEADER.length + 8 && isExifSegment(pos + 4)) {
+                this.tiffBase = pos + 4 + EXIF_HEADER.length;
+                this.limit = Math.min(this.limit, pos + 2 + length);
+                return readTiff();
+            }
+            pos += 2 + length;
+        }
+        return null;
+    }
+
+    private boolean isExifSegment(long pos) throws IOException {
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (getUnsignedByte(pos + i) != EXIF_HEADER[i])
+                return false;
+        }
+        return true;
+    }
+
+    private ExifDates readTiff() throws IOException {
+        ByteOrder order;
+        int byteOrder = getUnsignedShort(this.tiffBase, ByteOrder.BIG_ENDIAN);
+        if (byteOrder == 0x4949) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (byteOrder == 0x4D4D) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            return null;
+        }
+        if (getUnsignedShort(this.tiffBase + 2, order) != 42)
+            return null;
+
+        String[] dates = new String[2];
+        long exifIfd = readIfd(getUnsignedInt(this.tiffBase + 4, order), order, dates);
+        if (exifIfd < 0)
+            return null;
+        if (exifIfd > 0 && readIfd(exifIfd, order, dates) < 0)
+            return null;
+
+        return dates[0] == null && dates[1] == null ? ExifDates.NONE : new ExifDates(dates[0], dates[1]);
+    }
+
+    /**
+     * Reads an IFD looking for the date tags
+     *
+     * @param offset
+     *            Offset of the IFD relative to the TIFF header
+     * @param order
+     *            Byte order
+     * @param dates
+     *            Array to populate with the original and digitized dates
+     * @return Offset of the EXIF sub-IFD if this IFD points to one, 0 if it
+     *         does not or -1 if the IFD is malformed
+     * @throws IOException
+     */
+    private long readIfd(long offset, ByteOrder order, String[] dates) throws IOException {
+        long pos = this.tiffBase + offset;
+        if (offset < 8 || pos + 2 > this.limit)
+            return -1;
+        int entries = getUnsignedShort(pos, order);
+        if (entries > MAX_IFD_ENTRIES || pos + 2 + entries * 12L > this.limit)
+            return -1;
+
+        long exifIfd = 0;
+        pos += 2;
+        for (int i = 0; i < entries; i++, pos += 12) {
+            int tag = getUnsignedShort(pos, order);
+            switch (tag) {
+            case TAG_DATE_TIME_ORIGINAL:
+                if (dates[0] == null)
+                    dates[0] = readAscii(pos, order);
+                break;
+            case TAG_DATE_TIME_DIGITIZED:
+                if (dates[1] == null)
+                    dates[1] = readAscii(pos, order);
+                break;
+            case TAG_EXIF_IFD_POINTER:
+                int type = getUnsignedShort(pos + 2, order);
+                if (type == TYPE_LONG || type == TYPE_IFD)
+                    exifIfd = getUnsignedInt(pos + 8, order);
+                break;
+            default:
+                // Not interested in other tags
+                break;
+            }
+        }
+        return exifIfd;
+    }
+
+    private String readAscii(long entry, ByteOrder order) throws IOException {
+        if (getUnsignedShort(entry + 2, order) != TYPE_ASCII)
+            return null;
+        long count = getUnsignedInt(entry + 4, order);
+        if (count == 0 || count > 64)
+            return null;
+        long valuePos = count <= 4 ? entry + 8 : this.tiffBase + getUnsignedInt(entry + 8, order);
+        if (valuePos + count > this.limit)
+            return null;
+
+        ensure(valuePos, (int) count);
+        int start = (int) (valuePos - this.windowStart);
+        int length = (int) count;
+        // Strip trailing NULs
+        while (length > 0 && this.window.get(start + length - 1) == 0) {
+            length--;
+        }
+        return new String(this.window.array(), start, length, StandardCharsets.US_ASCII);
+    }
+
+    private int getUnsignedByte(long pos) throws IOException {
+        ensure(pos, 1);
+        return this.window.get((int) (pos - this.windowStart)) & 0xFF;
+    }
+
+    private int getUnsignedShort(long pos, ByteOrder order) throws IOException {
+        ensure(pos, 2);
+        return this.window.order(order).getShort((int) (pos - this.windowStart)) & 0xFFFF;
+    }
+
+    private long getUnsignedInt(long pos, ByteOrder order) throws IOException {
+        ensure(pos, 4);
+        return this.window.order(order).getInt((int) (pos - this.windowStart)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Ensures the window covers the given range of the file, refilling it from
+     * the given position if necessary
+     */
+    private void ensure(long pos, int length) throws IOException {
+        if (pos >= this.windowStart && pos + length <= this.windowStart + this.window.limit())
+            return;
+
+        this.window.clear();
+        this.windowStart = pos;
+        while (this.window.hasRemaining()) {
+            int read = this.channel.read(this.window, pos + this.window.position());
+            if (read <= 0)
+                break;
+        }
+        this.window.flip();
+        if (this.window.limit() < length)
+            throw new IOException("Unexpected end of file");
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.rvesse.baby.photo.sorter.exif;
+
+/**
+ * The raw EXIF date values of a photo
+ */
+public class ExifDates {
+
+    /**
+     * Dates for a photo that was successfully read but which has no EXIF dates
+     */
+    public static final ExifDates NONE = new ExifDates(null, null);
+
+    private final String original, digitized;
+
+    public ExifDates(String original, String digitized) {
+        this.original = original;
+        this.digitized = digitized;
+    }
+
+    /**
+     * Gets the raw value of the {@code DateTimeOriginal} tag
+     *
+     * @return Value or {@code null} if not present
+     */
+    public String original() {
+        return this.original;
+    }
+
+    /**
+     * Gets the raw value of the {@code DateTimeDigitized} tag
+     *
+     * @return Value or {@code null} if not present
+     */
+    public String digitized() {
+        return this.digitized;
+    }
+}
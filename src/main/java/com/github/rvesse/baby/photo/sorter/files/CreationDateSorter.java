@@ -0,0 +1,143 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.Instant;
+
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+import com.github.rvesse.baby.photo.sorter.model.PhotoCatalog;
+
+/**
+ * Sorts photos by creation date using primitive keys
+ * <p>
+ * Produces exactly the same ordering as sorting with a
+ * {@link CreationDateComparator} but without repeatedly calling
+ * {@link Photo#creationDate()} and comparing {@link Instant} objects. Each
+ * photos creation date is read once, as epoch milliseconds straight from the
+ * catalog, into a {@code long[]} alongside an index array which is then sorted
+ * with a stable LSD radix sort, thus photos with identical creation dates
+ * retain their relative order just as they would with the stable
+ * {@link List#sort(java.util.Comparator)}.
+ * </p>
+ * <p>
+ * Photos without a creation date are given the {@link PhotoCatalog#NO_DATE}
+ * sentinel as their key, which sorts before all valid dates, and are
+ * pre-ordered by their file path ordinal, matching the comparators
+ * tie-breaking on {@link java.io.File#compareTo(java.io.File)}.
+ * </p>
+ */
+public class CreationDateSorter {
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private CreationDateSorter() {
+    }
+
+    /**
+     * Sorts the photos in-place by creation date
+     *
+     * @param photos
+     *            Photos
+     */
+    public static void sort(List<Photo> photos) {
+        int n = photos.size();
+        if (n < 2)
+            return;
+
+        Photo[] input = photos.toArray(new Photo[n]);
+        long[] keys = new long[n];
+        int[] order = new int[n];
+
+        // Photos without dates go first ordered by path, dated photos follow in
+        // their original order which the stable radix sort then preserves for
+        // identical dates
+        int[] undated = new int[n];
+        int undatedCount = 0, datedCount = 0;
+        for (int i = 0; i < n; i++) {
+            long creationDate = input[i].creationDateMillis();
+            if (creationDate == PhotoCatalog.NO_DATE) {
+                undated[undatedCount++] = i;
+            } else {
+                keys[datedCount] = creationDate;
+                order[datedCount] = i;
+                datedCount++;
+            }
+        }
+        if (undatedCount > 0) {
+            Integer[] pathOrdinals = new Integer[undatedCount];
+            for (int i = 0; i < undatedCount; i++) {
+                pathOrdinals[i] = undated[i];
+            }
+            Arrays.sort(pathOrdinals, (p, q) -> input[p].getFile().compareTo(input[q].getFile()));
+
+            System.arraycopy(keys, 0, keys, undatedCount, datedCount);
+            System.arraycopy(order, 0, order, undatedCount, datedCount);
+            for (int i = 0; i < undatedCount; i++) {
+                keys[i] = PhotoCatalog.NO_DATE;
+                order[i] = pathOrdinals[i];
+            }
+        }
+
+        radixSort(keys, order);
+
+        for (int i = 0; i < n; i++) {
+            photos.set(i, input[order[i]]);
+        }
+    }
+
+    /**
+     * Stable LSD radix sort of the keys carrying the values along with them
+     * <p>
+     * Passes where every key has the same digit, typically the high order bytes
+     * of timestamps, are skipped entirely.
+     * </p>
+     */
+    private static void radixSort(long[] keys, int[] values) {
+        int n = keys.length;
+        long[] keyBuffer = new long[n];
+        int[] valueBuffer = new int[n];
+        int[] counts = new int[RADIX];
+
+        long[] srcKeys = keys, dstKeys = keyBuffer;
+        int[] srcValues = values, dstValues = valueBuffer;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[digit(srcKeys[i], shift)]++;
+            }
+            if (counts[digit(srcKeys[0], shift)] == n)
+                continue;
+
+            int total = 0;
+            for (int b = 0; b < RADIX; b++) {
+                int count = counts[b];
+                counts[b] = total;
+                total += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int target = counts[digit(srcKeys[i], shift)]++;
+                dstKeys[target] = srcKeys[i];
+                dstValues[target] = srcValues[i];
+            }
+
+            long[] tempKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tempKeys;
+            int[] tempValues = srcValues;
+            srcValues = dstValues;
+            dstValues = tempValues;
+        }
+
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcValues, 0, values, 0, n);
+        }
+    }
+
+    private static int digit(long key, int shift) {
+        // Flip the sign bit so that signed keys sort correctly as unsigned
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & (RADIX - 1));
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.nio.file.Path;
+
+/**
+ * A source and target directory pair, used to cache decisions that apply to
+ * every photo transferred between the same directories
+ */
+final class DirectoryPair {
+    final Path from, to;
+
+    DirectoryPair(Path from, Path to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    static DirectoryPair of(Path fromFile, Path toFile) {
+        return new DirectoryPair(fromFile.toAbsolutePath().getParent(), toFile.toAbsolutePath().getParent());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.from.hashCode() + this.to.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof DirectoryPair))
+            return false;
+        DirectoryPair other = (DirectoryPair) obj;
+        return this.from.equals(other.from) && this.to.equals(other.to);
+    }
+}
@@ -0,0 +1,359 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.rvesse.baby.photo.sorter.cache.MetadataCache;
+import com.github.rvesse.baby.photo.sorter.model.CreationDateSource;
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+import com.github.rvesse.baby.photo.sorter.model.PhotoCatalog;
+import com.github.rvesse.baby.photo.sorter.model.PhotoSink;
+import com.github.rvesse.baby.photo.sorter.utils.Parallel;
+
+/**
+ * Sorts photos by creation date in bounded memory
+ * <p>
+ * Discovered photos are buffered until the budget is reached, at which point
+ * their creation dates are extracted in parallel and they are sorted and
+ * spilled to a run file holding just the path, source directory and creation
+ * date of each photo. Once discovery is complete the runs are merged in
+ * creation date order, if there are too many runs to merge at once they are
+ * first merged into larger runs. Thus at most the budget number of photos
+ * are held in memory at once regardless of the size of the library.
+ * </p>
+ * <p>
+ * The order is exactly that of {@link CreationDateSorter}: photos without a
+ * creation date come first ordered by path, and photos with identical creation
+ * dates retain the order in which they were discovered.
+ * </p>
+ */
+public class ExternalPhotoSorter implements PhotoSink, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExternalPhotoSorter.class);
+
+    static final int MAX_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A photo read back from the sorted runs
+     */
+    public static final class SortedPhoto {
+        private final String file, sourceDirectory;
+        private final long creationDate, discovered;
+        private final byte creationDateSource;
+
+        SortedPhoto(String file, String sourceDirectory, long creationDate, byte creationDateSource,
+                long discovered) {
+            this.file = file;
+            this.sourceDirectory = sourceDirectory;
+            this.creationDate = creationDate;
+            this.creationDateSource = creationDateSource;
+            this.discovered = discovered;
+        }
+
+        /**
+         * Gets the creation date
+         *
+         * @return Creation date as epoch milliseconds, or
+         *         {@link PhotoCatalog#NO_DATE} if none
+         */
+        public long creationDate() {
+            return this.creationDate;
+        }
+
+        /**
+         * Adds the photo to a catalog, its creation date is already known so
+         * is not extracted again
+         *
+         * @param catalog
+         *            Catalog
+         * @return Photo
+         */
+        public Photo addTo(PhotoCatalog catalog) {
+            return catalog.add(new File(this.file), new File(this.sourceDirectory), this.creationDate,
+                    this.creationDateSource >= 0 ? CreationDateSource.values()[this.creationDateSource] : null);
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            output.writeLong(this.creationDate);
+            output.writeLong(this.discovered);
+            output.writeByte(this.creationDateSource);
+            output.writeUTF(this.file);
+            output.writeUTF(this.sourceDirectory);
+        }
+
+        private static SortedPhoto read(DataInputStream input) throws IOException {
+            long creationDate;
+            try {
+                creationDate = input.readLong();
+            } catch (EOFException e) {
+                return null;
+            }
+            long discovered = input.readLong();
+            byte source = input.readByte();
+            return new SortedPhoto(input.readUTF(), input.readUTF(), creationDate, source, discovered);
+        }
+    }
+
+    private static final Comparator<SortedPhoto> ORDER = Comparator
+            .<SortedPhoto> comparingLong(p -> p.creationDate).thenComparing((p, q) -> {
+                // Undated photos are ordered by path as they are in memory
+                return p.creationDate == PhotoCatalog.NO_DATE ? new File(p.file).compareTo(new File(q.file)) : 0;
+            }).thenComparingLong(p -> p.discovered);
+
+    private final MetadataCache cache;
+    private final int budget, threads;
+    private final Path tempDir;
+    private final List<Path> runs = new ArrayList<>();
+    private PhotoCatalog catalog;
+    private List<Photo> buffer = new ArrayList<>();
+    // Discovery order of the first buffered photo
+    private long bufferStart = 0;
+    private long size = 0;
+
+    /**
+     * Creates a new sorter
+     *
+     * @param cache
+     *            Metadata cache, may be {@code null}
+     * @param budget
+     *            Maximum number of photos to hold in memory at once
+     * @param threads
+     *            Number of threads used to extract creation dates
+     * @throws IOException
+     *             Thrown if a temporary directory for the runs cannot be
+     *             created
+     */
+    public ExternalPhotoSorter(MetadataCache cache, int budget, int threads) throws IOException {
+        this.cache = cache;
+        this.budget = Math.max(1, budget);
+        this.threads = threads;
+        this.tempDir = Files.createTempDirectory("photo-sort");
+    }
+
+    /**
+     * Buffers a discovered photo, spilling the buffer to a run if the budget
+     * is reached
+     *
+     * @return Always {@code null} since photos are not retained
+     * @throws UncheckedIOException
+     *             Thrown if the buffer cannot be spilled
+     */
+    @Override
+    public synchronized Photo add(File file, BasicFileAttributes attributes, File sourceDirectory) {
+        if (this.catalog == null)
+            this.catalog = new PhotoCatalog(this.cache);
+        this.buffer.add(this.catalog.add(file, attributes, sourceDirectory));
+        this.size++;
+        if (this.buffer.size() >= this.budget) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of photos added
+     *
+     * @return Number of photos
+     */
+    public synchronized long size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of runs spilled so far
+     *
+     * @return Number of runs
+     */
+    public synchronized int runs() {
+        return this.runs.size();
+    }
+
+    private void spill() throws IOException {
+        List<Photo> photos = this.buffer;
+        long discovered = this.bufferStart;
+        if (photos.isEmpty())
+            return;
+        this.buffer = new ArrayList<>();
+        this.bufferStart = this.size;
+        this.catalog = null;
+
+        try {
+            Parallel.forEach(photos, this.threads, Photo::creationDateMillis);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to extract photo creation dates", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting photo creation dates");
+        }
+
+        List<SortedPhoto> sorted = new ArrayList<>(photos.size());
+        for (int i = 0; i < photos.size(); i++) {
+            Photo p = photos.get(i);
+            byte source = p.creationDateSource() != null ? (byte) p.creationDateSource().ordinal() : -1;
+            sorted.add(new SortedPhoto(p.getFile().getAbsolutePath(), p.getSourceDirectory().getAbsolutePath(),
+                    p.creationDateMillis(), source, discovered + i));
+        }
+        photos.clear();
+        sorted.sort(ORDER);
+
+        Path run = Files.createTempFile(this.tempDir, "run", ".bin");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+            for (SortedPhoto p : sorted) {
+                p.write(output);
+            }
+        }
+        this.runs.add(run);
+        LOGGER.debug("Spilled {} photos to sorted run {}", sorted.size(), run);
+    }
+
+    /**
+     * Completes sorting and merges the runs
+     * <p>
+     * No further photos may be added once this is called.
+     * </p>
+     *
+     * @return Photos in creation date order, the merge must be closed once
+     *         finished with
+     * @throws IOException
+     *             Thrown if the runs cannot be merged
+     */
+    public synchronized Merge merge() throws IOException {
+        spill();
+        while (this.runs.size() > MAX_FAN_IN) {
+            // Too many runs to merge at once so merge the oldest runs into a
+            // single larger run
+            List<Path> inputs = new ArrayList<>(this.runs.subList(0, MAX_FAN_IN));
+            this.runs.subList(0, MAX_FAN_IN).clear();
+            Path run = Files.createTempFile(this.tempDir, "run", ".bin");
+            try (Merge merge = new Merge(inputs);
+                    DataOutputStream output = new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+                while (merge.hasNext()) {
+                    merge.next().write(output);
+                }
+            }
+            for (Path input : inputs) {
+                Files.deleteIfExists(input);
+            }
+            this.runs.add(run);
+        }
+        return new Merge(new ArrayList<>(this.runs));
+    }
+
+    /**
+     * A k-way merge of sorted runs
+     */
+    public static final class Merge implements Iterator<SortedPhoto>, Closeable {
+
+        private static final class Run {
+            private final DataInputStream input;
+            private SortedPhoto current;
+
+            Run(Path path) throws IOException {
+                this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+            }
+
+            boolean advance() throws IOException {
+                this.current = SortedPhoto.read(this.input);
+                return this.current != null;
+            }
+        }
+
+        private final List<Run> runs = new ArrayList<>();
+        private final PriorityQueue<Run> queue = new PriorityQueue<>((a, b) -> ORDER.compare(a.current, b.current));
+
+        Merge(List<Path> paths) throws IOException {
+            try {
+                for (Path path : paths) {
+                    Run run = new Run(path);
+                    this.runs.add(run);
+                    if (run.advance())
+                        this.queue.add(run);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.queue.isEmpty();
+        }
+
+        /**
+         * Gets the next photo in creation date order
+         *
+         * @throws UncheckedIOException
+         *             Thrown if a run cannot be read
+         */
+        @Override
+        public SortedPhoto next() {
+            Run run = this.queue.poll();
+            if (run == null)
+                throw new NoSuchElementException();
+            SortedPhoto next = run.current;
+            try {
+                if (run.advance())
+                    this.queue.add(run);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return next;
+        }
+
+        @Override
+        public void close() {
+            for (Run run : this.runs) {
+                try {
+                    run.input.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            this.queue.clear();
+        }
+    }
+
+    /**
+     * Deletes all the runs
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            for (Path run : this.runs) {
+                Files.deleteIfExists(run);
+            }
+            this.runs.clear();
+            Files.deleteIfExists(this.tempDir);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete temporary sort files in {} - {}", this.tempDir, e.getMessage());
+        }
+    }
+}
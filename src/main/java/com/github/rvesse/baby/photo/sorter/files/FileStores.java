@@ -0,0 +1,53 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Determines whether directories are on the same file system
+ * <p>
+ * The result is cached per directory pair so the check costs nothing per
+ * photo.
+ * </p>
+ */
+public class FileStores {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileStores.class);
+
+    private final Map<DirectoryPair, Boolean> sameStore = new ConcurrentHashMap<>();
+
+    /**
+     * Gets whether the directories containing two files are on the same file
+     * system
+     * 
+     * @param fromFile
+     *            Source file
+     * @param toFile
+     *            Target file
+     * @return True if on the same file system, false if not or if it cannot be
+     *         determined
+     */
+    public boolean isSameFileStore(Path fromFile, Path toFile) {
+        return isSameFileStore(DirectoryPair.of(fromFile, toFile));
+    }
+
+    boolean isSameFileStore(DirectoryPair pair) {
+        return this.sameStore.computeIfAbsent(pair, FileStores::check);
+    }
+
+    private static boolean check(DirectoryPair pair) {
+        try {
+            return Files.getFileStore(pair.from).equals(Files.getFileStore(pair.to));
+        } catch (IOException e) {
+            LOGGER.debug("Unable to determine file systems of directories {} and {} - {}", pair.from, pair.to,
+                    e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+/**
+ * How preserved originals are placed into the target directory
+ */
+public enum LinkMode {
+    /**
+     * Photos are copied, doubling the space used
+     */
+    Copy,
+    /**
+     * Photos are hard linked where the source and target are on the same file
+     * system, falling back to copying otherwise
+     */
+    Hard,
+    /**
+     * Photos are symbolically linked to the originals, falling back to copying
+     * if links cannot be created
+     */
+    Symbolic
+}
@@ -0,0 +1,95 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places preserved originals into the target directory either by copying or
+ * linking them
+ * <p>
+ * Whether a pair of directories can be linked, i.e. they are on the same file
+ * system for hard links and the file system supports the link type, is
+ * determined once per directory pair and cached. A link failing for a pair
+ * marks that pair as unable to link so subsequent photos go straight to
+ * copying.
+ * </p>
+ */
+public class PhotoCopier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhotoCopier.class);
+
+    private final LinkMode mode;
+    private final FileStores stores;
+    private final Map<DirectoryPair, Boolean> linkable = new ConcurrentHashMap<>();
+
+    public PhotoCopier(LinkMode mode) {
+        this(mode, new FileStores());
+    }
+
+    public PhotoCopier(LinkMode mode, FileStores stores) {
+        this.mode = mode != null ? mode : LinkMode.Copy;
+        this.stores = stores;
+    }
+
+    /**
+     * Gets the configured link mode
+     * 
+     * @return Link mode
+     */
+    public LinkMode mode() {
+        return this.mode;
+    }
+
+    /**
+     * Copies, or links, a photo to a target file
+     * 
+     * @param from
+     *            Original photo
+     * @param to
+     *            Target file, which must not exist
+     * @return The mode actually used, may be {@link LinkMode#Copy} if linking
+     *         was not possible
+     * @throws IOException
+     *             Thrown if the photo cannot be copied
+     */
+    public LinkMode transfer(Path from, Path to) throws IOException {
+        if (this.mode != LinkMode.Copy) {
+            DirectoryPair pair = DirectoryPair.of(from, to);
+            if (this.linkable.computeIfAbsent(pair, this::canLink)) {
+                try {
+                    if (this.mode == LinkMode.Hard) {
+                        Files.createLink(to, from);
+                    } else {
+                        Files.createSymbolicLink(to, from.toAbsolutePath());
+                    }
+                    return this.mode;
+                } catch (UnsupportedOperationException | IOException e) {
+                    if (Files.exists(to, LinkOption.NOFOLLOW_LINKS))
+                        throw e instanceof IOException ? (IOException) e : new IOException(e);
+                    LOGGER.warn("Unable to {} link photos from {} to {}, falling back to copying - {}",
+                            this.mode == LinkMode.Hard ? "hard" : "symbolically", pair.from, pair.to,
+                            e.getMessage());
+                    this.linkable.put(pair, false);
+                }
+            }
+        }
+        Files.copy(from, to, StandardCopyOption.COPY_ATTRIBUTES);
+        return LinkMode.Copy;
+    }
+
+    private boolean canLink(DirectoryPair pair) {
+        if (this.mode != LinkMode.Hard || this.stores.isSameFileStore(pair))
+            return true;
+        LOGGER.debug("Directories {} and {} are on different file systems, photos will be copied", pair.from,
+                pair.to);
+        return false;
+    }
+}
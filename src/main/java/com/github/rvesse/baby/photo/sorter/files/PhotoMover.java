@@ -0,0 +1,193 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.github.rvesse.baby.photo.sorter.hashing.FileHasher;
+import com.github.rvesse.baby.photo.sorter.hashing.HashAlgorithm;
+import com.github.rvesse.baby.photo.sorter.metrics.Counter;
+import com.github.rvesse.baby.photo.sorter.utils.IoExecutor;
+
+/**
+ * Moves photos between file systems
+ * <p>
+ * Moves within a file system are simple atomic renames, but between file
+ * systems, e.g. when importing from an SD card, the photo has to be copied and
+ * the original deleted. The copy is hashed in the same pass so that it can be
+ * verified against any already known hash of the photo without reading it a
+ * second time, and is synced to disk before the original is deleted. As these
+ * copies are relatively slow several are carried out in parallel, with a
+ * bounded number in flight.
+ * </p>
+ */
+public class PhotoMover implements Closeable {
+
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    private final HashAlgorithm algorithm;
+    private final FileStores stores;
+    private final IoExecutor executor;
+
+    /**
+     * Creates a new mover
+     * 
+     * @param algorithm
+     *            Hash algorithm used to verify copies
+     * @param maxInFlight
+     *            Maximum number of cross device moves in flight
+     * @param stores
+     *            File stores
+     */
+    public PhotoMover(HashAlgorithm algorithm, int maxInFlight, FileStores stores) {
+        this.algorithm = algorithm;
+        this.stores = stores;
+        this.executor = new IoExecutor(maxInFlight);
+    }
+
+    /**
+     * Gets whether moving a photo requires a cross device move
+     * 
+     * @param from
+     *            Source file
+     * @param to
+     *            Target file
+     * @return True if cross device
+     */
+    public boolean isCrossDevice(Path from, Path to) {
+        return !this.stores.isSameFileStore(from, to);
+    }
+
+    /**
+     * Starts a cross device move, blocking if the maximum number of moves are
+     * already in flight
+     * 
+     * @param from
+     *            Source file
+     * @param to
+     *            Target file
+     * @param expectedHash
+     *            Known hash of the photo calculated with this movers algorithm,
+     *            may be {@code null} if not known
+     * @return Future that completes with the hash of the moved photo
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting for a move to complete
+     */
+    public CompletableFuture<byte[]> moveAcrossDevices(Path from, Path to, byte[] expectedHash)
+            throws InterruptedException {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        this.executor.execute(() -> {
+            try {
+                byte[] hash = moveVerified(from, to, this.algorithm, expectedHash);
+                Counter.CrossDeviceMoves.increment();
+                future.complete(hash);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Moves a photo, atomically if possible or by a verified copy otherwise
+     * 
+     * @param from
+     *            Source file
+     * @param to
+     *            Target file
+     * @param algorithm
+     *            Hash algorithm used to verify the copy if needed
+     * @throws IOException
+     *             Thrown if the photo cannot be moved
+     */
+    public static void move(Path from, Path to, HashAlgorithm algorithm) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            moveVerified(from, to, algorithm, null);
+        }
+    }
+
+    /**
+     * Moves a photo by copying it, verifying the copy and then deleting the
+     * original
+     * <p>
+     * The copy is made under a temporary name in the target directory and only
+     * renamed to the target once it is complete, synced and verified.
+     * </p>
+     * 
+     * @param from
+     *            Source file
+     * @param to
+     *            Target file
+     * @param algorithm
+     *            Hash algorithm
+     * @param expectedHash
+     *            Expected hash, may be {@code null} if not known
+     * @return Hash of the photo
+     * @throws IOException
+     *             Thrown if the photo cannot be moved
+     */
+    public static byte[] moveVerified(Path from, Path to, HashAlgorithm algorithm, byte[] expectedHash)
+            throws IOException {
+        if (Files.exists(to, LinkOption.NOFOLLOW_LINKS))
+            throw new FileAlreadyExistsException(to.toString());
+
+        // Copy to a temporary sibling so that an interrupted copy never leaves
+        // a partial photo under the target name, any partial copy left by a
+        // previous interrupted run is replaced
+        Path partial = to.resolveSibling("." + to.getFileName() + PARTIAL_SUFFIX);
+        byte[] hash;
+        try {
+            Files.deleteIfExists(partial);
+            hash = FileHasher.copy(from, partial, algorithm);
+            if (expectedHash != null && !Arrays.equals(expectedHash, hash))
+                throw new IOException(String.format("Copy of %s does not match the known %s hash of the photo", from,
+                        algorithm.getName()));
+            Files.move(partial, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Never leave behind a partial copy
+            deleteQuietly(partial, e);
+            throw e;
+        }
+        Files.delete(from);
+        return hash;
+    }
+
+    private static void deleteQuietly(Path path, IOException cause) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Waits for every cross device move in flight to finish, whether or not it
+     * succeeds, failures are still reported via the individual futures
+     * 
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting
+     */
+    public void awaitInFlight() throws InterruptedException {
+        try {
+            this.executor.await();
+        } catch (ExecutionException e) {
+            // Move tasks report their failures via their futures so never
+            // fail themselves
+        }
+    }
+
+    @Override
+    public void close() {
+        this.executor.close();
+    }
+}
@@ -0,0 +1,278 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.rvesse.baby.photo.sorter.metrics.ThreadUsage;
+import com.github.rvesse.baby.photo.sorter.model.Configuration;
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+import com.github.rvesse.baby.photo.sorter.model.PhotoSink;
+
+/**
+ * Discovers photos by walking directories in parallel
+ * <p>
+ * Each directory is listed exactly once via a directory stream and the
+ * attributes of each entry are read at most once, sub-directories are then
+ * scanned as separate fork/join tasks so that wide directory trees, e.g. a
+ * target directory with many age bracket sub-folders, are scanned
+ * concurrently. Results are always assembled in directory traversal order so
+ * the discovered photo list is deterministic regardless of parallelism.
+ * </p>
+ */
+public class PhotoScanner implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhotoScanner.class);
+
+    private final ForkJoinPool pool;
+    private final FilenameFilter filter;
+    private final PhotoSink sink;
+    private final Collection<String> ignoredDirs;
+
+    /**
+     * Creates a new scanner
+     *
+     * @param config
+     *            Configuration
+     * @param sink
+     *            Sink that discovered photos are added to
+     * @param ignoredDirs
+     *            Absolute paths of directories that should not be scanned
+     * @param parallelism
+     *            Maximum number of directories to scan concurrently
+     */
+    public PhotoScanner(Configuration config, PhotoSink sink, Collection<String> ignoredDirs,
+            int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), ThreadUsage.forkJoinThreadFactory(), null, false);
+        this.filter = new ExtensionFilter(config);
+        this.sink = sink;
+        this.ignoredDirs = ignoredDirs;
+    }
+
+    /**
+     * Scans a directory for photos
+     *
+     * @param dir
+     *            Directory to scan
+     * @param originalSourceDirectory
+     *            Source directory that discovered photos are attributed to
+     * @param recurse
+     *            Whether sub-directories should also be scanned
+     * @param wasTargetDir
+     *            Whether the directory is a target directory, only affects
+     *            logging
+     * @return Discovered photos, empty if the sink does not retain photos
+     */
+    public List<Photo> scan(File dir, File originalSourceDirectory, boolean recurse, boolean wasTargetDir) {
+        return this.pool.invoke(new ScanTask(dir.toPath(), originalSourceDirectory, recurse, wasTargetDir));
+    }
+
+    /**
+     * Indexes the immediate sub-directories of a directory with the highest
+     * sequence ID used by the candidate photos each contains
+     * <p>
+     * Only entry names are inspected, so this is much cheaper than a scan, and
+     * sub-directories are indexed in parallel. Used to find the sequence IDs
+     * already taken by photos sorted into a target directory.
+     * </p>
+     * <p>
+     * A photo's sequence ID is taken to be the digits at the end of its name,
+     * before the extension. If a directory contains more photos than its
+     * highest such ID, e.g. because some names don't end in a sequence ID, the
+     * number of photos is used instead so that it is never under estimated.
+     * </p>
+     *
+     * @param dir
+     *            Directory to index
+     * @return Map of absolute sub-directory paths to highest sequence IDs
+     */
+    public Map<String, Long> index(File dir) {
+        return this.pool.invoke(new IndexTask(dir.toPath()));
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    private class ScanTask extends RecursiveTask<List<Photo>> {
+
+        private static final long serialVersionUID = 6514180286468318223L;
+
+        private final Path dir;
+        private final File originalSourceDirectory;
+        private final boolean recurse, wasTargetDir;
+
+        public ScanTask(Path dir, File originalSourceDirectory, boolean recurse, boolean wasTargetDir) {
+            this.dir = dir;
+            this.originalSourceDirectory = originalSourceDirectory;
+            this.recurse = recurse;
+            this.wasTargetDir = wasTargetDir;
+        }
+
+        @Override
+        protected List<Photo> compute() {
+            List<Photo> photos = new ArrayList<>();
+            List<ScanTask> subdirs = new ArrayList<>();
+            File dirFile = this.dir.toFile();
+            int found = 0;
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    boolean isCandidate = filter.accept(dirFile, name);
+
+                    // When not recursing we only care about candidate photos so
+                    // can avoid reading attributes for anything else
+                    if (!isCandidate && !this.recurse)
+                        continue;
+
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to read attributes of {} - {}", entry, e.getMessage());
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        if (!this.recurse)
+                            continue;
+
+                        File subdir = entry.toFile();
+                        if (ignoredDirs.contains(subdir.getAbsolutePath())) {
+                            if (this.wasTargetDir) {
+                                LOGGER.warn(
+                                        "Ignoring target sub-directory {} as requested, reorganisation may be ineffectual as a result",
+                                        subdir.getAbsolutePath());
+                            } else {
+                                LOGGER.warn("Ignoring sub-directory {} as requested", subdir.getAbsolutePath());
+                            }
+                            continue;
+                        }
+
+                        LOGGER.info("Scanning sub-directory {} for reorganisation", subdir.getAbsolutePath());
+                        subdirs.add(new ScanTask(entry, this.originalSourceDirectory, true, this.wasTargetDir));
+                    } else if (isCandidate && attributes.isRegularFile()) {
+                        File f = entry.toFile();
+
+                        // Ignore and delete zero-length files
+                        if (attributes.size() == 0) {
+                            f.delete();
+                            continue;
+                        }
+
+                        found++;
+                        Photo p = sink.add(f, attributes, this.originalSourceDirectory);
+                        if (p != null)
+                            photos.add(p);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Failed to scan directory {} - {}", dirFile.getAbsolutePath(), e.getMessage());
+                return photos;
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Directory {} contained {} photos", dirFile.getAbsolutePath(), found);
+            }
+
+            if (!subdirs.isEmpty()) {
+                ForkJoinTask.invokeAll(subdirs);
+                for (ScanTask subdir : subdirs) {
+                    photos.addAll(subdir.join());
+                }
+            }
+            return photos;
+        }
+    }
+
+    private class IndexTask extends RecursiveTask<Map<String, Long>> {
+
+        private static final long serialVersionUID = -2207526541960848012L;
+
+        private final Path dir;
+
+        public IndexTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected Map<String, Long> compute() {
+            Map<String, Long> index = new LinkedHashMap<>();
+            List<ForkJoinTask<Long>> highest = new ArrayList<>();
+            List<Path> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry)) {
+                        subdirs.add(entry);
+                        highest.add(ForkJoinTask.adapt(() -> highestSequenceId(entry)));
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to index directory {} - {}", this.dir, e.getMessage());
+                return index;
+            }
+
+            ForkJoinTask.invokeAll(highest);
+            for (int i = 0; i < subdirs.size(); i++) {
+                index.put(subdirs.get(i).toFile().getAbsolutePath(), highest.get(i).join());
+            }
+            return index;
+        }
+
+        private long highestSequenceId(Path subdir) {
+            long count = 0, highest = 0;
+            File subdirFile = subdir.toFile();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(subdir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (filter.accept(subdirFile, name)) {
+                        count++;
+                        highest = Math.max(highest, trailingSequenceId(name));
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to index directory {} - {}", subdir, e.getMessage());
+            }
+            return Math.max(count, highest);
+        }
+    }
+
+    /**
+     * Parses the digits at the end of a file name, ignoring its extension
+     *
+     * @param name
+     *            File name
+     * @return Sequence ID, or zero if the name does not end in digits
+     */
+    static long trailingSequenceId(String name) {
+        int end = name.lastIndexOf('.');
+        if (end < 0)
+            end = name.length();
+        int start = end;
+        while (start > 0 && end - start < 18) {
+            char c = name.charAt(start - 1);
+            if (c < '0' || c > '9')
+                break;
+            start--;
+        }
+        return start < end ? Long.parseLong(name.substring(start, end)) : 0;
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.rvesse.baby.photo.sorter.model.Photo;
+
+/**
+ * Plans the order in which photos in a group are moved to their targets
+ * <p>
+ * The moves form a graph where a photo depends upon the photo whose current
+ * location is its target. Any photo whose target is also the target of an
+ * earlier photo, or the location of a photo that is not moving, is a conflict
+ * so each location is the target of at most one photo and this graph consists
+ * only of chains and cycles. Photos whose target is
+ * free are moved directly, each move frees up the photo's old location which
+ * may in turn unblock the photo targeting it, so chains are resolved without
+ * any temporary moves. Only photos that are part of a cycle need to go via a
+ * temporary name, and only one per cycle.
+ * </p>
+ * <p>
+ * When copying the original locations never become free so any photo whose
+ * target is the location of another photo is a conflict that cannot be
+ * resolved.
+ * </p>
+ */
+public class RenamePlanner {
+
+    /**
+     * A step in the plan
+     */
+    public static class Step {
+        private final Photo photo;
+        private final boolean temporary;
+
+        Step(Photo photo, boolean temporary) {
+            this.photo = photo;
+            this.temporary = temporary;
+        }
+
+        /**
+         * Gets the photo to move
+         *
+         * @return Photo
+         */
+        public Photo photo() {
+            return this.photo;
+        }
+
+        /**
+         * Gets whether this step moves the photo to a temporary location,
+         * rather than to its target, to break a cycle
+         *
+         * @return True if a temporary move
+         */
+        public boolean isTemporary() {
+            return this.temporary;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private final List<Photo> conflicts = new ArrayList<>();
+    private int temporaryMoves = 0;
+
+    private RenamePlanner() {
+    }
+
+    /**
+     * Plans the moves for a group of photos whose target files have been
+     * calculated
+     *
+     * @param photos
+     *            Photos
+     * @param copying
+     *            Whether the originals are being copied rather than moved
+     * @return Plan
+     */
+    public static RenamePlanner plan(List<Photo> photos, boolean copying) {
+        RenamePlanner plan = new RenamePlanner();
+
+        // Index the pending photos by their current location, photos that are
+        // not moving already occupy their target
+        Map<String, Photo> sources = new LinkedHashMap<>();
+        Set<String> targets = new HashSet<>();
+        for (Photo p : photos) {
+            if (p.isNoOp()) {
+                targets.add(p.getTargetFile().getAbsolutePath());
+            } else {
+                sources.put(p.getFile().getAbsolutePath(), p);
+            }
+        }
+
+        // Work out which photos can move immediately and which are waiting on
+        // the location they target being vacated
+        Deque<Photo> ready = new ArrayDeque<>();
+        Map<String, Photo> waiting = new HashMap<>();
+        for (Photo p : sources.values()) {
+            String target = p.getTargetFile().getAbsolutePath();
+            if (!targets.add(target)) {
+                plan.conflicts.add(p);
+            } else if (sources.containsKey(target)) {
+                if (copying) {
+                    plan.conflicts.add(p);
+                } else {
+                    waiting.put(target, p);
+                }
+            } else {
+                ready.add(p);
+            }
+        }
+        if (copying) {
+            for (Photo p : ready) {
+                plan.steps.add(new Step(p, false));
+            }
+            return plan;
+        }
+
+        drain(plan, ready, waiting);
+
+        // Anything still waiting is part of a cycle, break each cycle by moving
+        // one photo to a temporary location which unblocks the rest of the
+        // cycle, then the photo can be moved from there to its target
+        while (!waiting.isEmpty()) {
+            Photo p = waiting.values().iterator().next();
+            String source = p.getFile().getAbsolutePath();
+            plan.steps.add(new Step(p, true));
+            plan.temporaryMoves++;
+            waiting.remove(p.getTargetFile().getAbsolutePath());
+            Photo unblocked = waiting.remove(source);
+            if (unblocked != null)
+                ready.add(unblocked);
+            drain(plan, ready, waiting);
+            plan.steps.add(new Step(p, false));
+        }
+        return plan;
+    }
+
+    private static void drain(RenamePlanner plan, Deque<Photo> ready, Map<String, Photo> waiting) {
+        while (!ready.isEmpty()) {
+            Photo p = ready.poll();
+            plan.steps.add(new Step(p, false));
+            Photo unblocked = waiting.remove(p.getFile().getAbsolutePath());
+            if (unblocked != null)
+                ready.add(unblocked);
+        }
+    }
+
+    /**
+     * Gets the steps in the order they must be carried out
+     *
+     * @return Steps
+     */
+    public List<Step> steps() {
+        return Collections.unmodifiableList(this.steps);
+    }
+
+    /**
+     * Gets the photos that could not be planned because their target is the
+     * location of another photo which is being copied or is not moving, or is
+     * also the target of another photo
+     *
+     * @return Conflicting photos
+     */
+    public List<Photo> conflicts() {
+        return Collections.unmodifiableList(this.conflicts);
+    }
+
+    /**
+     * Gets the number of temporary moves needed to break cycles
+     *
+     * @return Temporary moves
+     */
+    public int temporaryMoves() {
+        return this.temporaryMoves;
+    }
+}
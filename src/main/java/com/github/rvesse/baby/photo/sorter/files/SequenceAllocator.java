@@ -0,0 +1,83 @@
+package com.github.rvesse.baby.photo.sorter.files;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates photo sequence IDs per target directory
+ * <p>
+ * Each directory has a high-water mark, the last sequence ID issued in or
+ * already taken by photos in that directory, so allocating the next free ID is
+ * a single atomic increment and safe to use from multiple threads. Marks are
+ * seeded with the highest sequence ID already used in each directory, taken
+ * from the index of target directories built during discovery rather than by
+ * listing each target directory again, so gaps left by photos that have since
+ * been deleted are never reused.
+ * </p>
+ */
+public class SequenceAllocator {
+
+    private final Map<String, AtomicLong> marks = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an allocator where all directories start from zero
+     */
+    public SequenceAllocator() {
+    }
+
+    /**
+     * Creates an allocator seeded from an index of the highest sequence IDs
+     * used by photos already sorted into directories
+     *
+     * @param index
+     *            Map of absolute directory paths to highest sequence IDs, see
+     *            {@link PhotoScanner#index(File)}
+     */
+    public SequenceAllocator(Map<String, Long> index) {
+        for (Map.Entry<String, Long> entry : index.entrySet()) {
+            mark(entry.getKey()).set(entry.getValue());
+        }
+    }
+
+    private AtomicLong mark(String dir) {
+        return this.marks.computeIfAbsent(dir, k -> new AtomicLong());
+    }
+
+    /**
+     * Records that a sequence ID is already taken in a directory, subsequent
+     * allocations for the directory will come after it
+     *
+     * @param dir
+     *            Directory
+     * @param id
+     *            Sequence ID
+     */
+    public void claim(File dir, long id) {
+        mark(dir.getAbsolutePath()).accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Allocates the next free sequence ID for a directory
+     *
+     * @param dir
+     *            Directory
+     * @return Sequence ID
+     */
+    public long next(File dir) {
+        return mark(dir.getAbsolutePath()).incrementAndGet();
+    }
+
+    /**
+     * Gets the last sequence ID issued in or taken by photos in a directory
+     *
+     * @param dir
+     *            Directory
+     * @return High-water mark, zero if none
+     */
+    public long highWaterMark(File dir) {
+        AtomicLong mark = this.marks.get(dir.getAbsolutePath());
+        return mark != null ? mark.get() : 0;
+    }
+}
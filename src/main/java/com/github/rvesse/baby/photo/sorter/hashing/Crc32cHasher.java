@@ -0,0 +1,64 @@
+package com.github.rvesse.baby.photo.sorter.hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A hasher that calculates a CRC32C (Castagnoli) checksum combined with the
+ * number of bytes hashed
+ * <p>
+ * CRC32C is not available in the JDK prior to Java 9 so this is a pure Java
+ * slicing-by-8 implementation. The resulting digest is the 8 byte length
+ * followed by the 4 byte checksum, including the length makes collisions
+ * between files of different sizes impossible.
+ * </p>
+ */
+public class Crc32cHasher implements Hasher {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLES[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) {
+                TABLES[t][i] = (TABLES[t - 1][i] >>> 8) ^ TABLES[0][TABLES[t - 1][i] & 0xFF];
+            }
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+    private long length = 0;
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        this.length += buffer.remaining();
+        ByteOrder originalOrder = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int c = this.crc;
+        while (buffer.remaining() >= 8) {
+            long block = buffer.getLong();
+            int low = (int) block ^ c;
+            int high = (int) (block >>> 32);
+            c = TABLES[7][low & 0xFF] ^ TABLES[6][(low >>> 8) & 0xFF] ^ TABLES[5][(low >>> 16) & 0xFF]
+                    ^ TABLES[4][low >>> 24] ^ TABLES[3][high & 0xFF] ^ TABLES[2][(high >>> 8) & 0xFF]
+                    ^ TABLES[1][(high >>> 16) & 0xFF] ^ TABLES[0][high >>> 24];
+        }
+        while (buffer.hasRemaining()) {
+            c = (c >>> 8) ^ TABLES[0][(c ^ buffer.get()) & 0xFF];
+        }
+        this.crc = c;
+        buffer.order(originalOrder);
+    }
+
+    @Override
+    public byte[] digest() {
+        return ByteBuffer.allocate(12).putLong(this.length).putInt(~this.crc).array();
+    }
+}
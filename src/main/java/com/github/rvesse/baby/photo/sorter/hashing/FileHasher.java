@@ -0,0 +1,173 @@
+package com.github.rvesse.baby.photo.sorter.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.rvesse.baby.photo.sorter.metrics.Counter;
+
+/**
+ * Calculates hashes of file contents
+ * <p>
+ * File contents are streamed through direct buffers taken from a bounded
+ * pool and returned to it afterwards, thus hashing a file does not usually
+ * allocate any buffers beyond those needed by the hash algorithm itself.
+ * Buffers are pooled rather than cached per thread since file I/O may run on
+ * a new virtual thread per file. At most {@value #MAX_DIRECT_BUFFERS} direct
+ * buffers are ever allocated, should more files be hashed at once heap
+ * buffers are used for the excess.
+ * </p>
+ */
+public class FileHasher {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final int MAX_DIRECT_BUFFERS = 64;
+
+    private static final BlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(MAX_DIRECT_BUFFERS);
+    private static final AtomicInteger DIRECT_BUFFERS = new AtomicInteger();
+
+    private FileHasher() {
+    }
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFERS.poll();
+        if (buffer != null)
+            return buffer;
+        if (DIRECT_BUFFERS.getAndIncrement() < MAX_DIRECT_BUFFERS)
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        DIRECT_BUFFERS.decrementAndGet();
+        return ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        // Only direct buffers are pooled, there is always room for them
+        if (buffer.isDirect())
+            BUFFERS.offer(buffer);
+    }
+
+    /**
+     * Hashes the entire contents of a file
+     * 
+     * @param path
+     *            File
+     * @param algorithm
+     *            Hash algorithm
+     * @return Digest
+     * @throws IOException
+     *             Thrown if the file cannot be read
+     */
+    public static byte[] hash(Path path, HashAlgorithm algorithm) throws IOException {
+        Hasher hasher = algorithm.newHasher();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            update(hasher, channel, 0, Long.MAX_VALUE);
+        }
+        return hasher.digest();
+    }
+
+    /**
+     * Hashes the first and last {@code blockSize} bytes of a file
+     * <p>
+     * If the file is no more than twice the block size then this is equivalent
+     * to hashing the entire file.
+     * </p>
+     * 
+     * @param path
+     *            File
+     * @param algorithm
+     *            Hash algorithm
+     * @param blockSize
+     *            Block size
+     * @return Digest
+     * @throws IOException
+     *             Thrown if the file cannot be read
+     */
+    public static byte[] hashHeadAndTail(Path path, HashAlgorithm algorithm, long blockSize) throws IOException {
+        Hasher hasher = algorithm.newHasher();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= 2 * blockSize) {
+                update(hasher, channel, 0, size);
+            } else {
+                update(hasher, channel, 0, blockSize);
+                update(hasher, channel, size - blockSize, blockSize);
+            }
+        }
+        return hasher.digest();
+    }
+
+    /**
+     * Copies a file hashing its contents in the same pass
+     * <p>
+     * The target is synced to disk before returning and is given the same
+     * last modified time as the source.
+     * </p>
+     * 
+     * @param from
+     *            Source file
+     * @param to
+     *            Target file, must not exist
+     * @param algorithm
+     *            Hash algorithm
+     * @return Digest of the contents copied
+     * @throws IOException
+     *             Thrown if the file cannot be copied
+     */
+    public static byte[] copy(Path from, Path to, HashAlgorithm algorithm) throws IOException {
+        Hasher hasher = algorithm.newHasher();
+        ByteBuffer buffer = acquireBuffer();
+        try (FileChannel input = FileChannel.open(from, StandardOpenOption.READ);
+                FileChannel output = FileChannel.open(to, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = input.size(), copied = 0;
+            while (true) {
+                buffer.clear();
+                int read = input.read(buffer);
+                if (read < 0)
+                    break;
+                copied += read;
+                Counter.BytesHashed.add(read);
+                buffer.flip();
+                hasher.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+            }
+            if (copied != size)
+                throw new IOException(
+                        String.format("Copied %d bytes from %s but expected %d bytes", copied, from, size));
+            output.force(true);
+        } finally {
+            releaseBuffer(buffer);
+        }
+        Files.setLastModifiedTime(to, Files.getLastModifiedTime(from));
+        return hasher.digest();
+    }
+
+    private static void update(Hasher hasher, FileChannel channel, long position, long length) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity())
+                    buffer.limit((int) remaining);
+                int read = channel.read(buffer, position);
+                if (read < 0)
+                    break;
+                position += read;
+                remaining -= read;
+                Counter.BytesHashed.add(read);
+                buffer.flip();
+                hasher.update(buffer);
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+}
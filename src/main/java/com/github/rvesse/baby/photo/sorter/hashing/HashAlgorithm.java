@@ -0,0 +1,64 @@
+package com.github.rvesse.baby.photo.sorter.hashing;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MessageDigestAlgorithms;
+
+/**
+ * Available hash algorithms for detecting duplicate photos
+ */
+public enum HashAlgorithm {
+    /**
+     * SHA-512, cryptographically strong but the most expensive to calculate
+     */
+    Sha512(MessageDigestAlgorithms.SHA_512),
+    /**
+     * SHA-256, cryptographically strong and cheaper than SHA-512 on 32 bit
+     * hardware
+     */
+    Sha256(MessageDigestAlgorithms.SHA_256),
+    /**
+     * CRC32C checksum combined with the file size, very cheap but with a
+     * relatively high collision probability for very large libraries
+     */
+    Crc32c("CRC32C+size"),
+    /**
+     * 128 bit MurmurHash3, a fast non-cryptographic hash
+     */
+    Murmur3("Murmur3-128");
+
+    private final String name;
+
+    private HashAlgorithm(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the algorithm, this is used to identify hashes
+     * calculated with this algorithm in the metadata cache
+     * 
+     * @return Name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Creates a new hasher for this algorithm
+     * 
+     * @return Hasher
+     */
+    public Hasher newHasher() {
+        switch (this) {
+        case Sha512:
+            return new MessageDigestHasher(DigestUtils.getSha512Digest());
+        case Sha256:
+            return new MessageDigestHasher(DigestUtils.getSha256Digest());
+        case Crc32c:
+            return new Crc32cHasher();
+        case Murmur3:
+            return new Murmur3Hasher();
+        default:
+            throw new IllegalStateException("Unsupported hash algorithm " + this);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.rvesse.baby.photo.sorter.hashing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A streaming hash calculation
+ * <p>
+ * Hashers are stateful and not thread safe, a new hasher should be obtained
+ * from {@link HashAlgorithm#newHasher()} for each hash calculation.
+ * </p>
+ */
+public interface Hasher {
+
+    /**
+     * Updates the hash with the remaining bytes of the buffer, consuming them
+     * 
+     * @param buffer
+     *            Buffer
+     */
+    public void update(ByteBuffer buffer);
+
+    /**
+     * Completes the hash calculation
+     * 
+     * @return Binary digest
+     */
+    public byte[] digest();
+}
@@ -0,0 +1,26 @@
+package com.github.rvesse.baby.photo.sorter.hashing;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * A hasher backed by a JCA {@link MessageDigest}
+ */
+public class MessageDigestHasher implements Hasher {
+
+    private final MessageDigest digest;
+
+    public MessageDigestHasher(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        this.digest.update(buffer);
+    }
+
+    @Override
+    public byte[] digest() {
+        return this.digest.digest();
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.rvesse.baby.photo.sorter.hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A hasher that calculates the 128 bit x64 variant of the MurmurHash3
+ * non-cryptographic hash
+ */
+public class Murmur3Hasher implements Hasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final int BLOCK_SIZE = 16;
+
+    private long h1 = 0, h2 = 0;
+    private long length = 0;
+    private final ByteBuffer tail = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        this.length += buffer.remaining();
+        ByteOrder originalOrder = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        // Complete any partial block left over from a previous update
+        if (this.tail.position() > 0) {
+            while (this.tail.hasRemaining() && buffer.hasRemaining()) {
+                this.tail.put(buffer.get());
+            }
+            if (this.tail.hasRemaining()) {
+                buffer.order(originalOrder);
+                return;
+            }
+            this.tail.flip();
+            mixBlock(this.tail.getLong(), this.tail.getLong());
+            this.tail.clear();
+        }
+
+        while (buffer.remaining() >= BLOCK_SIZE) {
+            mixBlock(buffer.getLong(), buffer.getLong());
+        }
+        this.tail.put(buffer);
+        buffer.order(originalOrder);
+    }
+
+    private void mixBlock(long k1, long k2) {
+        this.h1 ^= mixK1(k1);
+        this.h1 = Long.rotateLeft(this.h1, 27);
+        this.h1 += this.h2;
+        this.h1 = this.h1 * 5 + 0x52dce729;
+
+        this.h2 ^= mixK2(k2);
+        this.h2 = Long.rotateLeft(this.h2, 31);
+        this.h2 += this.h1;
+        this.h2 = this.h2 * 5 + 0x38495ab5;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public byte[] digest() {
+        int remaining = this.tail.position();
+        if (remaining > 0) {
+            long k1 = 0, k2 = 0;
+            for (int i = remaining - 1; i >= 8; i--) {
+                k2 = (k2 << 8) | (this.tail.get(i) & 0xFF);
+            }
+            for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (this.tail.get(i) & 0xFF);
+            }
+            if (remaining > 8)
+                this.h2 ^= mixK2(k2);
+            this.h1 ^= mixK1(k1);
+        }
+
+        this.h1 ^= this.length;
+        this.h2 ^= this.length;
+        this.h1 += this.h2;
+        this.h2 += this.h1;
+        this.h1 = fmix(this.h1);
+        this.h2 = fmix(this.h2);
+        this.h1 += this.h2;
+        this.h2 += this.h1;
+
+        return ByteBuffer.allocate(BLOCK_SIZE).putLong(this.h1).putLong(this.h2).array();
+    }
+}
@@ -0,0 +1,455 @@
+package com.github.rvesse.baby.photo.sorter.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.rvesse.baby.photo.sorter.cache.MetadataCache;
+import com.github.rvesse.baby.photo.sorter.files.PhotoCopier;
+import com.github.rvesse.baby.photo.sorter.files.PhotoMover;
+import com.github.rvesse.baby.photo.sorter.hashing.HashAlgorithm;
+
+/**
+ * A write-ahead journal of the file system operations carried out when
+ * organising photos
+ * <p>
+ * Every planned operation is recorded, and synced to disk, before it is
+ * carried out and marked as done afterwards. Planned operations are recorded
+ * in batches and synced once per batch while completion records are synced
+ * every {@value #DONE_BATCH_SIZE} operations, so the cost of the journal is a
+ * handful of syncs per group rather than one per photo. If a run is
+ * interrupted the journal can then be used to either resume or roll back the
+ * run without having to rescan the library.
+ * </p>
+ * <p>
+ * Since completion records are synced lazily an operation not recorded as done
+ * may have completed before the interruption, so resuming and rolling back
+ * inspect the file system to determine whether each such operation actually
+ * happened.
+ * </p>
+ */
+public class Journal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Journal.class);
+
+    private static final int MAGIC = 0x4250534A; // BPSJ
+    private static final int VERSION = 1;
+    private static final byte RECORD_PLAN = 1, RECORD_DONE = 2;
+    static final int DONE_BATCH_SIZE = 256;
+
+    private final File file;
+    private final Map<Long, JournalEntry> entries = new LinkedHashMap<>();
+    private FileOutputStream fileOutput;
+    private DataOutputStream log;
+    private long nextId = 1;
+    private int unsynced = 0;
+    private boolean truncated = false;
+
+    private Journal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens a journal, loading any entries from a previous run
+     *
+     * @param file
+     *            Journal file
+     * @return Journal
+     * @throws IOException
+     *             Thrown if the journal cannot be read
+     */
+    public static Journal open(File file) throws IOException {
+        Journal journal = new Journal(file);
+        if (file.exists() && file.length() > 0) {
+            journal.load();
+        }
+        return journal;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(this.file), 64 * 1024))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("Not a recognised journal file");
+
+            while (true) {
+                int type = input.read();
+                if (type == -1)
+                    break;
+                switch (type) {
+                case RECORD_PLAN:
+                    long id = input.readLong();
+                    JournalOperation operation = JournalOperation.values()[input.readByte()];
+                    File from = new File(input.readUTF());
+                    File to = new File(input.readUTF());
+                    this.entries.put(id, new JournalEntry(id, operation, from, to));
+                    this.nextId = Math.max(this.nextId, id + 1);
+                    break;
+                case RECORD_DONE:
+                    JournalEntry entry = this.entries.get(input.readLong());
+                    if (entry != null)
+                        entry.markDone();
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // Interrupted part way through writing a record, anything not
+            // fully recorded had not yet been carried out
+            LOGGER.warn("Journal {} was truncated, the last record will be ignored", this.file.getAbsolutePath());
+            this.truncated = true;
+        }
+    }
+
+    /**
+     * Gets all entries in the journal in the order they were planned
+     *
+     * @return Entries
+     */
+    public List<JournalEntry> entries() {
+        return Collections.unmodifiableList(new ArrayList<>(this.entries.values()));
+    }
+
+    /**
+     * Gets whether the journal contains any operations not recorded as done
+     *
+     * @return True if there are incomplete operations
+     */
+    public boolean hasIncomplete() {
+        return this.entries.values().stream().anyMatch(e -> !e.isDone());
+    }
+
+    /**
+     * Gets the number of operations not recorded as done
+     *
+     * @return Number of incomplete operations
+     */
+    public long incompleteCount() {
+        return this.entries.values().stream().filter(e -> !e.isDone()).count();
+    }
+
+    private void ensureLog() throws IOException {
+        if (this.log != null)
+            return;
+        if (this.truncated)
+            rewrite();
+        boolean isNew = !this.file.exists() || this.file.length() == 0;
+        this.fileOutput = new FileOutputStream(this.file, true);
+        this.log = new DataOutputStream(new BufferedOutputStream(this.fileOutput, 64 * 1024));
+        if (isNew) {
+            this.log.writeInt(MAGIC);
+            this.log.writeInt(VERSION);
+        }
+    }
+
+    /**
+     * Rewrites the journal from the loaded entries, discarding any partial
+     * record, so that further records can be appended
+     */
+    private void rewrite() throws IOException {
+        File temp = new File(this.file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp);
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output, 64 * 1024))) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            for (JournalEntry entry : this.entries.values()) {
+                writePlan(data, entry);
+            }
+            for (JournalEntry entry : this.entries.values()) {
+                if (entry.isDone()) {
+                    data.writeByte(RECORD_DONE);
+                    data.writeLong(entry.id());
+                }
+            }
+            data.flush();
+            output.getChannel().force(false);
+        }
+        Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.truncated = false;
+    }
+
+    private static void writePlan(DataOutputStream output, JournalEntry entry) throws IOException {
+        output.writeByte(RECORD_PLAN);
+        output.writeLong(entry.id());
+        output.writeByte(entry.operation().ordinal());
+        output.writeUTF(entry.from().getAbsolutePath());
+        output.writeUTF(entry.to().getAbsolutePath());
+    }
+
+    /**
+     * Records a planned operation
+     * <p>
+     * The record is buffered, {@link #sync()} must be called before the
+     * operation is carried out.
+     * </p>
+     *
+     * @param operation
+     *            Operation
+     * @param from
+     *            Source file
+     * @param to
+     *            Destination file
+     * @return Journal entry
+     * @throws IOException
+     *             Thrown if the record cannot be written
+     */
+    public synchronized JournalEntry plan(JournalOperation operation, File from, File to) throws IOException {
+        ensureLog();
+        JournalEntry entry = new JournalEntry(this.nextId++, operation, from.getAbsoluteFile(), to.getAbsoluteFile());
+        writePlan(this.log, entry);
+        this.entries.put(entry.id(), entry);
+        return entry;
+    }
+
+    /**
+     * Records that a planned operation has been carried out
+     *
+     * @param entry
+     *            Journal entry
+     * @throws IOException
+     *             Thrown if the record cannot be written
+     */
+    public synchronized void done(JournalEntry entry) throws IOException {
+        ensureLog();
+        entry.markDone();
+        this.log.writeByte(RECORD_DONE);
+        this.log.writeLong(entry.id());
+        if (++this.unsynced >= DONE_BATCH_SIZE)
+            sync();
+    }
+
+    /**
+     * Flushes buffered records and syncs them to disk
+     *
+     * @throws IOException
+     *             Thrown if the journal cannot be synced
+     */
+    public synchronized void sync() throws IOException {
+        if (this.log == null)
+            return;
+        this.log.flush();
+        this.fileOutput.getChannel().force(false);
+        this.unsynced = 0;
+    }
+
+    /**
+     * Resumes an interrupted run by carrying out any incomplete operations
+     *
+     * @param cache
+     *            Metadata cache to update as photos are moved, may be
+     *            {@code null}
+     * @param copier
+     *            Copier used to carry out copy operations
+     * @param algorithm
+     *            Hash algorithm used to verify moves that have to copy between
+     *            file systems
+     * @return Number of operations that could not be resumed
+     * @throws IOException
+     *             Thrown if the journal cannot be updated
+     */
+    public int resume(MetadataCache cache, PhotoCopier copier, HashAlgorithm algorithm) throws IOException {
+        int failed = 0;
+        List<JournalEntry> entries = entries();
+        Map<String, List<Integer>> movesInto = movesInto(entries);
+        for (int i = 0; i < entries.size(); i++) {
+            JournalEntry entry = entries.get(i);
+            if (entry.isDone())
+                continue;
+
+            boolean fromExists = entry.from().exists(), toExists = entry.to().exists();
+            try {
+                switch (entry.operation()) {
+                case MOVE:
+                    if (hasHappened(entries, movesInto, i)) {
+                        LOGGER.debug("{} already completed", entry);
+                    } else if (fromExists && !toExists) {
+                        LOGGER.debug("Resuming {}", entry);
+                        PhotoMover.move(entry.from().toPath(), entry.to().toPath(), algorithm);
+                        if (cache != null)
+                            cache.relocate(entry.from(), entry.to());
+                    } else {
+                        LOGGER.error("Unable to resume {} as the {}", entry,
+                                toExists ? "target file already exists" : "source file no longer exists");
+                        failed++;
+                        continue;
+                    }
+                    break;
+                case COPY:
+                    if (!toExists) {
+                        LOGGER.debug("Resuming {}", entry);
+                        copier.transfer(entry.from().toPath(), entry.to().toPath());
+                    } else if (!fromExists || !isCopy(entry)) {
+                        LOGGER.error("Unable to resume {} as the target file already exists and does not match", entry);
+                        failed++;
+                        continue;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported operation " + entry.operation());
+                }
+                done(entry);
+            } catch (IOException e) {
+                LOGGER.error("Failed to resume {} - {}", entry, e.getMessage());
+                failed++;
+            }
+        }
+        sync();
+        return failed;
+    }
+
+    /**
+     * Indexes the positions of the moves into each file
+     */
+    private static Map<String, List<Integer>> movesInto(List<JournalEntry> entries) {
+        Map<String, List<Integer>> movesInto = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            JournalEntry entry = entries.get(i);
+            if (entry.operation() == JournalOperation.MOVE)
+                movesInto.computeIfAbsent(entry.to().getAbsolutePath(), k -> new ArrayList<>()).add(i);
+        }
+        return movesInto;
+    }
+
+    /**
+     * Determines whether the move at the given position already happened even
+     * though it was not recorded as done
+     * <p>
+     * A move whose source is gone and whose target exists happened. However
+     * in a chain of moves, e.g. B to C followed by A to B, the source of a
+     * completed move is filled again by a later move, so where the source
+     * still exists the move happened if the first later move into its source
+     * happened, which is determined in the same way.
+     * </p>
+     */
+    private static boolean hasHappened(List<JournalEntry> entries, Map<String, List<Integer>> movesInto, int i) {
+        while (true) {
+            JournalEntry entry = entries.get(i);
+            if (entry.isDone())
+                return true;
+            if (!entry.from().exists())
+                return entry.to().exists();
+
+            // Source exists so look for the next move that refilled it
+            int next = -1;
+            for (int j : movesInto.getOrDefault(entry.from().getAbsolutePath(), Collections.emptyList())) {
+                if (j > i) {
+                    next = j;
+                    break;
+                }
+            }
+            if (next < 0)
+                return false;
+            i = next;
+        }
+    }
+
+    /**
+     * Rolls back an interrupted run by undoing every operation that was carried
+     * out, in reverse order
+     *
+     * @param cache
+     *            Metadata cache to update as photos are moved, may be
+     *            {@code null}
+     * @param algorithm
+     *            Hash algorithm used to verify moves that have to copy between
+     *            file systems
+     * @return Number of operations that could not be rolled back
+     */
+    public int rollback(MetadataCache cache, HashAlgorithm algorithm) {
+        int failed = 0;
+        List<JournalEntry> entries = entries();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            JournalEntry entry = entries.get(i);
+            boolean fromExists = entry.from().exists(), toExists = entry.to().exists();
+            try {
+                switch (entry.operation()) {
+                case MOVE:
+                    if (toExists && !fromExists) {
+                        LOGGER.debug("Rolling back {}", entry);
+                        PhotoMover.move(entry.to().toPath(), entry.from().toPath(), algorithm);
+                        if (cache != null)
+                            cache.relocate(entry.to(), entry.from());
+                    } else if (entry.isDone()) {
+                        LOGGER.error("Unable to roll back {} as the {}", entry,
+                                fromExists ? "source file has been replaced" : "target file no longer exists");
+                        failed++;
+                    }
+                    break;
+                case COPY:
+                    // Only remove files we can be sure are our copies
+                    if (toExists && fromExists && (entry.isDone() || isCopy(entry))) {
+                        LOGGER.debug("Rolling back {}", entry);
+                        Files.delete(entry.to().toPath());
+                    } else if (entry.isDone()) {
+                        LOGGER.error("Unable to roll back {} as the {}", entry,
+                                fromExists ? "copy no longer exists" : "original no longer exists");
+                        failed++;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported operation " + entry.operation());
+                }
+            } catch (IOException e) {
+                LOGGER.error("Failed to roll back {} - {}", entry, e.getMessage());
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Determines whether the target of a copy operation is a copy of the source
+     * (copies preserve the last modified time)
+     */
+    private static boolean isCopy(JournalEntry entry) {
+        return entry.from().length() == entry.to().length()
+                && entry.from().lastModified() == entry.to().lastModified();
+    }
+
+    /**
+     * Closes the journal and deletes it since all the operations it records
+     * have been completed, or rolled back
+     *
+     * @throws IOException
+     *             Thrown if the journal cannot be deleted
+     */
+    public synchronized void complete() throws IOException {
+        close();
+        this.entries.clear();
+        this.truncated = false;
+        Files.deleteIfExists(this.file.toPath());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.log == null)
+            return;
+        try {
+            sync();
+        } finally {
+            this.log.close();
+            this.log = null;
+            this.fileOutput = null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.rvesse.baby.photo.sorter.journal;
+
+import java.io.File;
+
+/**
+ * A planned operation recorded in a {@link Journal}
+ */
+public class JournalEntry {
+
+    private final long id;
+    private final JournalOperation operation;
+    private final File from, to;
+    private volatile boolean done;
+
+    JournalEntry(long id, JournalOperation operation, File from, File to) {
+        this.id = id;
+        this.operation = operation;
+        this.from = from;
+        this.to = to;
+    }
+
+    public long id() {
+        return this.id;
+    }
+
+    public JournalOperation operation() {
+        return this.operation;
+    }
+
+    public File from() {
+        return this.from;
+    }
+
+    public File to() {
+        return this.to;
+    }
+
+    /**
+     * Gets whether the journal records the operation as having completed
+     * <p>
+     * Completion records are only synced to disk in batches so after a crash
+     * an operation may have completed without being recorded as such.
+     * </p>
+     * 
+     * @return True if recorded as done
+     */
+    public boolean isDone() {
+        return this.done;
+    }
+
+    void markDone() {
+        this.done = true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s -> %s", this.operation, this.from.getAbsolutePath(), this.to.getAbsolutePath());
+    }
+}
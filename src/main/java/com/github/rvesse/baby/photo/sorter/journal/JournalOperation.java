@@ -0,0 +1,15 @@
+package com.github.rvesse.baby.photo.sorter.journal;
+
+/**
+ * Kinds of file system operation recorded in a {@link Journal}
+ */
+public enum JournalOperation {
+    /**
+     * Photo moved to a new location
+     */
+    MOVE,
+    /**
+     * Photo copied, or linked, to a new location, the original is preserved
+     */
+    COPY
+}
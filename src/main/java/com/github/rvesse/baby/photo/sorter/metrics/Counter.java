@@ -0,0 +1,88 @@
+package com.github.rvesse.baby.photo.sorter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of work done during a run
+ * <p>
+ * Counters are global and may be incremented concurrently from any thread
+ * with very little overhead, {@link RunStats} attributes the counts to stages
+ * by taking snapshots of them as each stage starts and finishes.
+ * </p>
+ */
+public enum Counter {
+    /**
+     * Creation dates obtained from the metadata cache
+     */
+    CachedCreationDates,
+    /**
+     * Creation dates obtained by the fast EXIF reader
+     */
+    ExifFastPath,
+    /**
+     * Creation dates obtained by fully parsing the image metadata because the
+     * fast EXIF reader could not decide
+     */
+    ExifSlowPath,
+    /**
+     * Creation dates that fell back to the file system creation date
+     */
+    FileSystemFallback,
+    /**
+     * Photos without a valid creation date
+     */
+    InvalidCreationDates,
+    /**
+     * Bytes read in order to calculate hashes, including partial hashes and
+     * copies that are hashed as they are made
+     */
+    BytesHashed,
+    /**
+     * Photos moved by renaming them
+     */
+    Moves,
+    /**
+     * Photos moved across file systems by a verified copy
+     */
+    CrossDeviceMoves,
+    /**
+     * Photos copied
+     */
+    Copies,
+    /**
+     * Photos hard or symbolically linked
+     */
+    Links,
+    /**
+     * Photos moved to temporary locations to break move cycles
+     */
+    TemporaryMoves;
+
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Increments the counter
+     */
+    public void increment() {
+        this.value.increment();
+    }
+
+    /**
+     * Adds to the counter
+     *
+     * @param amount
+     *            Amount
+     */
+    public void add(long amount) {
+        this.value.add(amount);
+    }
+
+    /**
+     * Gets the current value of the counter
+     *
+     * @return Value
+     */
+    public long get() {
+        return this.value.sum();
+    }
+}
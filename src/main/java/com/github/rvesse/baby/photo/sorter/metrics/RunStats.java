@@ -0,0 +1,179 @@
+package com.github.rvesse.baby.photo.sorter.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Statistics about where a run spends its time
+ * <p>
+ * A run is divided into stages, for each stage the wall time, the CPU time
+ * used and bytes allocated across all threads (see {@link ThreadUsage}), the
+ * number of items processed and how much each {@link Counter} increased are
+ * recorded. Stages are expected to run one after another, any work done
+ * outside of a stage is only reflected in the totals for the run.
+ * </p>
+ */
+public class RunStats {
+
+    /**
+     * Statistics for a single stage, recorded once the stage is closed
+     */
+    public static final class Stage implements AutoCloseable {
+        private final String name;
+        private final Snapshot start;
+        private Snapshot end;
+        private long items = -1;
+
+        private Stage(String name) {
+            this.name = name;
+            this.start = new Snapshot();
+        }
+
+        /**
+         * Sets the number of items, e.g. photos, processed by the stage
+         *
+         * @param items
+         *            Number of items
+         */
+        public void items(long items) {
+            this.items = items;
+        }
+
+        @Override
+        public void close() {
+            if (this.end == null)
+                this.end = new Snapshot();
+        }
+    }
+
+    private static final class Snapshot {
+        private final long wallTime = System.nanoTime();
+        private final long cpuTime = ThreadUsage.cpuTime();
+        private final long allocatedBytes = ThreadUsage.allocatedBytes();
+        private final long[] counters = new long[Counter.values().length];
+
+        Snapshot() {
+            for (Counter counter : Counter.values()) {
+                this.counters[counter.ordinal()] = counter.get();
+            }
+        }
+    }
+
+    private final Snapshot start = new Snapshot();
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Starts a stage, the stage must be closed once it completes
+     *
+     * @param name
+     *            Stage name
+     * @return Stage
+     */
+    public synchronized Stage stage(String name) {
+        Stage stage = new Stage(name);
+        this.stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Formats the statistics as JSON
+     *
+     * @return JSON
+     */
+    public synchronized String toJson() {
+        Snapshot end = new Snapshot();
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        appendTimes(json, "  ", this.start, end);
+        json.append(",\n  \"counters\": ");
+        appendCounters(json, this.start, end, false);
+        json.append(",\n  \"stages\": [");
+        boolean first = true;
+        for (Stage stage : this.stages) {
+            Snapshot stageEnd = stage.end != null ? stage.end : end;
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    {\n      \"name\": ");
+            appendString(json, stage.name);
+            json.append(",\n");
+            appendTimes(json, "      ", stage.start, stageEnd);
+            if (stage.items >= 0) {
+                json.append(",\n      \"items\": ").append(stage.items);
+                double seconds = (stageEnd.wallTime - stage.start.wallTime) / 1e9;
+                json.append(",\n      \"itemsPerSecond\": ")
+                        .append(String.format(Locale.ROOT, "%.1f", seconds > 0 ? stage.items / seconds : 0));
+            }
+            json.append(",\n      \"counters\": ");
+            appendCounters(json, stage.start, stageEnd, true);
+            json.append("\n    }");
+        }
+        json.append(first ? "]\n" : "\n  ]\n");
+        json.append("}");
+        return json.toString();
+    }
+
+    /**
+     * Writes the statistics as JSON to a file
+     *
+     * @param file
+     *            File
+     * @throws IOException
+     *             Thrown if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        Files.write(file.toPath(), (toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendTimes(StringBuilder json, String indent, Snapshot start, Snapshot end) {
+        json.append(indent).append("\"wallTimeMillis\": ").append((end.wallTime - start.wallTime) / 1000000);
+        long cpuTime = difference(start.cpuTime, end.cpuTime);
+        json.append(",\n").append(indent).append("\"cpuTimeMillis\": ")
+                .append(cpuTime >= 0 ? cpuTime / 1000000 : -1);
+        json.append(",\n").append(indent).append("\"allocatedBytes\": ")
+                .append(difference(start.allocatedBytes, end.allocatedBytes));
+    }
+
+    private static long difference(long start, long end) {
+        // Unavailable measurements are reported as -1
+        return start >= 0 && end >= 0 ? end - start : -1;
+    }
+
+    private static void appendCounters(StringBuilder json, Snapshot start, Snapshot end, boolean nonZeroOnly) {
+        Map<Counter, Long> counters = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            long value = end.counters[counter.ordinal()] - start.counters[counter.ordinal()];
+            if (value != 0 || !nonZeroOnly)
+                counters.put(counter, value);
+        }
+        json.append("{");
+        boolean first = true;
+        for (Map.Entry<Counter, Long> counter : counters.entrySet()) {
+            json.append(first ? " " : ", ");
+            first = false;
+            appendString(json, counter.getKey().name());
+            json.append(": ").append(counter.getValue());
+        }
+        json.append(first ? "}" : " }");
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
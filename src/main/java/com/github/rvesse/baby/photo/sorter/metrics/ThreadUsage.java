@@ -0,0 +1,148 @@
+package com.github.rvesse.baby.photo.sorter.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Measures the CPU time used and bytes allocated by all threads
+ * <p>
+ * The {@link ThreadMXBean} only reports on threads that are still alive, yet
+ * most work is done by pool threads that exit once their stage completes. So
+ * threads created via {@link #threadFactory()} or
+ * {@link #forkJoinThreadFactory()} record their final usage as they exit,
+ * which is then included in all later measurements. Virtual threads are
+ * accounted to the carrier threads they run on.
+ * </p>
+ */
+public final class ThreadUsage {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Map<Long, long[]> RETIRED = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            if (THREADS.isThreadCpuTimeSupported())
+                THREADS.setThreadCpuTimeEnabled(true);
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+                if (threads.isThreadAllocatedMemorySupported())
+                    threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            // Measurements will be reported as unavailable
+        }
+    }
+
+    private ThreadUsage() {
+    }
+
+    /**
+     * Gets the total CPU time used by all threads so far
+     *
+     * @return CPU time in nanoseconds, or -1 if not available
+     */
+    public static long cpuTime() {
+        if (!THREADS.isThreadCpuTimeSupported() || !THREADS.isThreadCpuTimeEnabled())
+            return -1;
+        return total(0, THREADS::getThreadCpuTime);
+    }
+
+    /**
+     * Gets the total bytes allocated by all threads so far
+     *
+     * @return Allocated bytes, or -1 if not available
+     */
+    public static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        if (threads == null)
+            return -1;
+        return total(1, threads::getThreadAllocatedBytes);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads
+                : null;
+    }
+
+    private interface Measure {
+        long of(long threadId);
+    }
+
+    private static long total(int index, Measure measure) {
+        long[] ids = THREADS.getAllThreadIds();
+        long[] live = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            live[i] = measure.of(ids[i]);
+        }
+        // Taken after the live values so a thread that exits in between is
+        // counted once via its final usage
+        Map<Long, long[]> retired = new HashMap<>(RETIRED);
+
+        long total = 0;
+        for (long[] usage : retired.values()) {
+            total += Math.max(0, usage[index]);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (!retired.containsKey(ids[i]))
+                total += Math.max(0, live[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Records the final usage of the current thread, called as the thread
+     * exits
+     */
+    static void retire() {
+        long id = Thread.currentThread().getId();
+        long cpu = THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()
+                ? THREADS.getCurrentThreadCpuTime()
+                : -1;
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        long allocated = threads != null ? threads.getThreadAllocatedBytes(id) : -1;
+        RETIRED.put(id, new long[] { cpu, allocated });
+    }
+
+    /**
+     * Gets a factory for platform threads whose usage is still measured after
+     * they exit
+     *
+     * @return Thread factory
+     */
+    public static ThreadFactory threadFactory() {
+        ThreadFactory delegate = Executors.defaultThreadFactory();
+        return r -> delegate.newThread(() -> {
+            try {
+                r.run();
+            } finally {
+                retire();
+            }
+        });
+    }
+
+    /**
+     * Gets a factory for fork join pool threads whose usage is still measured
+     * after they exit
+     *
+     * @return Thread factory
+     */
+    public static ForkJoinPool.ForkJoinWorkerThreadFactory forkJoinThreadFactory() {
+        return pool -> new ForkJoinWorkerThread(pool) {
+            @Override
+            protected void onTermination(Throwable exception) {
+                retire();
+                super.onTermination(exception);
+            }
+        };
+    }
+}
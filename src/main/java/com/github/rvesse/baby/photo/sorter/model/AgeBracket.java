@@ -0,0 +1,63 @@
+package com.github.rvesse.baby.photo.sorter.model;
+
+/**
+ * An age bracket into which photos are grouped e.g. {@code 3 Weeks}
+ * <p>
+ * Brackets are interned by {@link AgeBrackets} so brackets may be compared by
+ * reference.
+ * </p>
+ */
+public class AgeBracket {
+
+    public enum Unit {
+        PREGNANT(" Weeks Pregnant"), DAYS(" Days"), WEEKS(" Weeks"), MONTHS(" Months"), YEARS(" Years"), UNKNOWN("");
+
+        private final String suffix;
+
+        private Unit(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    /**
+     * Bracket for photos with no known creation date
+     */
+    public static final AgeBracket UNKNOWN = new AgeBracket(Unit.UNKNOWN, 0, "Unknown");
+
+    private final Unit unit;
+    private final long value;
+    private final String label;
+
+    private AgeBracket(Unit unit, long value, String label) {
+        this.unit = unit;
+        this.value = value;
+        this.label = label;
+    }
+
+    AgeBracket(Unit unit, long value) {
+        this(unit, value, Long.toString(value) + unit.suffix);
+    }
+
+    public Unit unit() {
+        return this.unit;
+    }
+
+    public long value() {
+        return this.value;
+    }
+
+    /**
+     * Gets the label for the bracket as used for group names and the
+     * {@code %a} naming pattern element
+     * 
+     * @return Label
+     */
+    public String label() {
+        return this.label;
+    }
+
+    @Override
+    public String toString() {
+        return this.label;
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.rvesse.baby.photo.sorter.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.Instant;
+import org.joda.time.Period;
+
+import com.github.rvesse.baby.photo.sorter.model.AgeBracket.Unit;
+
+/**
+ * Calculates the age brackets photos belong to
+ * <p>
+ * Since the date of birth and due date are at midnight UTC every instant on the
+ * same UTC day falls in the same bracket, the one exception being the first
+ * instant of a day before the date of birth which is handled by calculating its
+ * bracket directly. Brackets are therefore calculated once per distinct day and
+ * cached in an array indexed by the day relative to the date of birth, with
+ * each distinct bracket interned so that every photo in a bracket shares the
+ * same label.
+ * </p>
+ */
+public class AgeBrackets {
+
+    private static final long MILLIS_PER_DAY = DateTimeConstants.MILLIS_PER_DAY;
+    private static final int INITIAL_DAYS_BEFORE_BIRTH = 366, INITIAL_DAYS = 4 * 366;
+    // Beyond this range brackets are just calculated directly
+    private static final int MAX_DAYS = 128 * 366;
+
+    private final Configuration config;
+    private final boolean cacheable;
+    private final long dobDay;
+    private final Map<String, AgeBracket> interned = new HashMap<>();
+    private volatile AgeBracket[] brackets;
+    private long firstDay;
+
+    AgeBrackets(Configuration config) {
+        this.config = config;
+        long dob = config.dateOfBirth().getMillis(), dueDate = config.dueDate().getMillis();
+        this.cacheable = dob % MILLIS_PER_DAY == 0 && dueDate % MILLIS_PER_DAY == 0;
+        this.dobDay = Math.floorDiv(dob, MILLIS_PER_DAY);
+        this.firstDay = this.dobDay - INITIAL_DAYS_BEFORE_BIRTH;
+        this.brackets = new AgeBracket[INITIAL_DAYS];
+    }
+
+    /**
+     * Gets the age bracket for the given creation date
+     * 
+     * @param creationDate
+     *            Creation date, may be {@code null}
+     * @return Age bracket
+     */
+    public AgeBracket forInstant(Instant creationDate) {
+        if (creationDate == null)
+            return AgeBracket.UNKNOWN;
+
+        long millis = creationDate.getMillis();
+        long day = Math.floorDiv(millis, MILLIS_PER_DAY);
+        if (!this.cacheable || (day < this.dobDay && millis % MILLIS_PER_DAY == 0))
+            return intern(calculate(creationDate));
+
+        AgeBracket[] brackets = this.brackets;
+        long index = day - this.firstDay;
+        if (index >= 0 && index < brackets.length) {
+            AgeBracket bracket = brackets[(int) index];
+            if (bracket != null)
+                return bracket;
+        }
+        return cache(day, creationDate);
+    }
+
+    /**
+     * Gets the age bracket label for the given creation date
+     * 
+     * @param creationDate
+     *            Creation date, may be {@code null}
+     * @return Label
+     */
+    public String label(Instant creationDate) {
+        return forInstant(creationDate).label();
+    }
+
+    private synchronized AgeBracket cache(long day, Instant creationDate) {
+        AgeBracket bracket = intern(calculate(creationDate));
+        if (day < this.dobDay - MAX_DAYS || day > this.dobDay + MAX_DAYS)
+            return bracket;
+
+        // Grow the array to cover the day if necessary
+        AgeBracket[] brackets = this.brackets;
+        long firstDay = Math.min(this.firstDay, day);
+        long lastDay = Math.max(this.firstDay + brackets.length - 1, day);
+        if (firstDay != this.firstDay || lastDay >= this.firstDay + brackets.length) {
+            int length = (int) Math.max(lastDay - firstDay + 1, 2L * brackets.length);
+            AgeBracket[] grown = new AgeBracket[length];
+            System.arraycopy(brackets, 0, grown, (int) (this.firstDay - firstDay), brackets.length);
+            brackets = grown;
+            this.firstDay = firstDay;
+        }
+        brackets[(int) (day - this.firstDay)] = bracket;
+        this.brackets = brackets;
+        return bracket;
+    }
+
+    private synchronized AgeBracket intern(AgeBracket bracket) {
+        AgeBracket existing = this.interned.putIfAbsent(bracket.label(), bracket);
+        return existing != null ? existing : bracket;
+    }
+
+    /**
+     * Calculates the age bracket for an instant
+     */
+    private AgeBracket calculate(Instant i) {
+        Instant dob = this.config.dateOfBirth();
+        if (i.isBefore(dob)) {
+            long daysUntilDue = (this.config.dueDate().getMillis() - i.getMillis()) / MILLIS_PER_DAY;
+            return new AgeBracket(Unit.PREGNANT, this.config.weeksOfPregnancy() - (daysUntilDue / 7));
+        }
+
+        long days = (i.getMillis() - dob.getMillis()) / MILLIS_PER_DAY;
+        long weeks = days / 7;
+        if (weeks < this.config.weeksThreshold()) {
+            return new AgeBracket(Unit.DAYS, days);
+        }
+        Period p = new Period(dob, i);
+        long months = (p.getYears() * 12) + p.getMonths();
+        if (months < this.config.monthsThreshold()) {
+            return new AgeBracket(Unit.WEEKS, weeks);
+        } else if ((months / 12) < this.config.yearsThreshold()) {
+            return new AgeBracket(Unit.MONTHS, months);
+        }
+        return new AgeBracket(Unit.YEARS, p.getYears());
+    }
+}
@@ -6,7 +6,9 @@ import java.util.Locale;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 
+import com.github.rvesse.baby.photo.sorter.cache.MetadataCache;
 import com.github.rvesse.baby.photo.sorter.model.naming.NamingPattern;
+import com.github.rvesse.baby.photo.sorter.model.naming.NamingPatternBuilder;
 
 public class Configuration {
 
@@ -17,9 +19,11 @@ public class Configuration {
     private final int sequencePadding;
     private final List<String> extensions;
     private final NamingPattern namingPattern;
+    private final MetadataCache metadataCache;
+    private final AgeBrackets ageBrackets;
 
     public Configuration(Instant dob, Instant dueDate, String name, long weeksThreshold, long monthsThreshold, long yearsThreshold,
-            Events events, List<String> extensions, int sequencePadding, NamingPattern namePattern) {
+            Events events, List<String> extensions, int sequencePadding, NamingPattern namePattern, MetadataCache metadataCache) {
         this.dob = dob;
         this.dueDate = dueDate;
         this.babyName = name;
@@ -29,7 +33,8 @@ public class Configuration {
         this.events = events;
         this.extensions = extensions;
         this.sequencePadding = sequencePadding;
-        this.namingPattern = namePattern;
+        this.namingPattern = namePattern != null ? NamingPatternBuilder.compile(namePattern, this) : null;
+        this.metadataCache = metadataCache;
         
         if (this.dob.isEqual(this.dueDate) || this.dob.isBefore(this.dueDate)) {
             this.weeksOfPregnancy = 39;
@@ -37,6 +42,7 @@ public class Configuration {
             Duration lateness = new Duration(this.dueDate, this.dateOfBirth());
             this.weeksOfPregnancy = 39 + (lateness.getStandardDays() / 7);
         }
+        this.ageBrackets = new AgeBrackets(this);
     }
 
     public String babyName() {
@@ -67,6 +73,15 @@ public class Configuration {
         return this.yearsThreshold;
     }
     
+    /**
+     * Gets the age brackets calculator
+     * 
+     * @return Age brackets
+     */
+    public AgeBrackets ageBrackets() {
+        return this.ageBrackets;
+    }
+
     public Events events() {
         return this.events;
     }
@@ -87,4 +102,13 @@ public class Configuration {
     public NamingPattern namingPattern() {
         return this.namingPattern;
     }
+
+    /**
+     * Gets the metadata cache
+     * 
+     * @return Metadata cache, or {@code null} if not using a cache
+     */
+    public MetadataCache metadataCache() {
+        return this.metadataCache;
+    }
 }
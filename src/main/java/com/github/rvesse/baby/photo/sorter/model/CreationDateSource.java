@@ -0,0 +1,19 @@
+package com.github.rvesse.baby.photo.sorter.model;
+
+/**
+ * Possible sources of a photos creation date
+ */
+public enum CreationDateSource {
+    /**
+     * EXIF {@code DateTimeOriginal} tag
+     */
+    EXIF_ORIGINAL,
+    /**
+     * EXIF {@code DateTimeDigitized} tag
+     */
+    EXIF_DIGITIZED,
+    /**
+     * File system creation date
+     */
+    FILESYSTEM
+}
@@ -0,0 +1,62 @@
+package com.github.rvesse.baby.photo.sorter.model;
+
+import com.github.rvesse.baby.photo.sorter.model.events.Event;
+
+/**
+ * Assigns events to photos in a single merged pass
+ * <p>
+ * Provided photos are presented in creation date order the candidate events
+ * and the first event that may contain the photo only ever move forwards, so
+ * each is tracked by a pointer that advances as photos are presented giving
+ * linear time grouping overall. Should a photo be presented out of order then
+ * the sweep falls back to looking up the event directly.
+ * </p>
+ */
+public class EventSweep {
+
+    private final Events events;
+    private int last = -1, first = 0;
+    private long previous = Long.MIN_VALUE;
+
+    EventSweep(Events events) {
+        this.events = events;
+    }
+
+    /**
+     * Gets the first event containing the photo
+     * 
+     * @param photo
+     *            Photo
+     * @return Event, or {@code null} if not in any event
+     */
+    public Event inEvent(Photo photo) {
+        return inEvent(photo.creationDateMillis());
+    }
+
+    /**
+     * Gets the first event containing the instant
+     * 
+     * @param instant
+     *            Instant as milliseconds since the epoch, or
+     *            {@link PhotoCatalog#NO_DATE}
+     * @return Event, or {@code null} if not in any event
+     */
+    public Event inEvent(long instant) {
+        if (instant == PhotoCatalog.NO_DATE)
+            return null;
+
+        if (instant < this.previous)
+            return this.events.inEvent(instant);
+        this.previous = instant;
+
+        // Advance to the last event that starts before the instant
+        while (this.last + 1 < this.events.starts.length && this.events.starts[this.last + 1] < instant) {
+            this.last++;
+        }
+        // Advance to the first event that ends after the instant
+        while (this.first < this.events.maxEnds.length && this.events.maxEnds[this.first] <= instant) {
+            this.first++;
+        }
+        return this.first <= this.last ? this.events.get(this.first) : null;
+    }
+}
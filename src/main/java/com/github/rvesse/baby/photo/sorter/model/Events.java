@@ -15,43 +15,56 @@ import org.slf4j.LoggerFactory;
 
 import com.github.rvesse.baby.photo.sorter.model.events.Event;
 import com.github.rvesse.baby.photo.sorter.model.events.EventComparator;
+import com.github.rvesse.baby.photo.sorter.model.events.EventValidationReport;
 
 public class Events {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Events.class);
 
     private final List<Event> events = new ArrayList<>();
+    // Interval index over the sorted events, maxEnds holds the running maximum
+    // end time so the first event containing an instant can be found by
+    // binary search
+    final long[] starts, ends, maxEnds;
+    private final EventValidationReport validation;
 
     public Events() {
         // No events
+        this.starts = new long[0];
+        this.ends = new long[0];
+        this.maxEnds = new long[0];
+        this.validation = new EventValidationReport();
     }
 
     public Events(Collection<Event> events) {
         this.events.addAll(events);
         this.events.sort(new EventComparator());
 
-        // Check and warn on overlapping/conflicting events
-        for (int i = 0; i < this.events.size(); i++) {
+        int n = this.events.size();
+        this.starts = new long[n];
+        this.ends = new long[n];
+        this.maxEnds = new long[n];
+        for (int i = 0; i < n; i++) {
             Event e = this.events.get(i);
-            for (int j = i + 1; j < this.events.size(); j++) {
-                Event other = this.events.get(j);
-
-                if (e.end().isAfter(other.start())) {
-                    if (e.end().isAfter(other.end())) {
-                        LOGGER.warn(
-                                "Event {} contains event {}, as a result no photos will be grouped into event {} because photos will always match event {} which starts first",
-                                e.name(), other.name(), other.name(), e.name());
-                    } else {
-                        LOGGER.warn(
-                                "Event {} overlaps with event {}, please note that photos will be grouped into the first containing event",
-                                e.name(), other.name());
-                    }
-                } else {
-                    // No overlap, so no need for further checks
-                    continue;
-                }
-            }
+            this.starts[i] = e.start().getMillis();
+            this.ends[i] = e.end().getMillis();
+            this.maxEnds[i] = i > 0 ? Math.max(this.maxEnds[i - 1], this.ends[i]) : this.ends[i];
         }
+
+        // Check and warn on overlapping/conflicting events
+        this.validation = EventValidationReport.validate(this.events);
+        if (!this.validation.isValid()) {
+            LOGGER.warn("{}", this.validation);
+        }
+    }
+
+    /**
+     * Gets the report of conflicting events found when the events were loaded
+     * 
+     * @return Validation report
+     */
+    public EventValidationReport getValidationReport() {
+        return this.validation;
     }
 
     /**
@@ -62,12 +75,67 @@ public class Events {
      * @return Event, or {@code null} if not in any event
      */
     public Event inEvent(Photo photo) {
-        for (Event e : this.events) {
-            if (e.inEvent(photo))
-                return e;
+        long creationDate = photo.creationDateMillis();
+        if (creationDate == PhotoCatalog.NO_DATE)
+            return null;
+        return inEvent(creationDate);
+    }
+
+    /**
+     * Gets the first event that contains the given instant
+     * <p>
+     * Events are sorted by start time so the candidate events are those that
+     * start before the instant, the first of those to end after the instant is
+     * the first event that contains it. Because the running maximum end time is
+     * non-decreasing that event can be found by binary search.
+     * </p>
+     * 
+     * @param instant
+     *            Instant as milliseconds since the epoch
+     * @return Event, or {@code null} if not in any event
+     */
+    Event inEvent(long instant) {
+        // Last event that starts before the instant
+        int last = firstIndexAfter(this.starts, instant, false) - 1;
+        if (last < 0)
+            return null;
+        // First event that ends after the instant
+        int first = firstIndexAfter(this.maxEnds, instant, true);
+        return first <= last ? this.events.get(first) : null;
+    }
+
+    /**
+     * Finds the first index in a sorted array whose value is greater than (or
+     * greater than or equal to if not strict) the given value
+     */
+    private static int firstIndexAfter(long[] values, long value, boolean strict) {
+        int low = 0, high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (strict ? values[mid] > value : values[mid] >= value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
         }
+        return low;
+    }
+
+    /**
+     * Creates a sweep over the events
+     * <p>
+     * A sweep assigns events to photos in a single merged pass provided that
+     * photos are presented in creation date order.
+     * </p>
+     * 
+     * @return Event sweep
+     */
+    public EventSweep sweep() {
+        return new EventSweep(this);
+    }
 
-        return null;
+    Event get(int index) {
+        return this.events.get(index);
     }
     
     public List<Event> getEvents() {
@@ -4,10 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.imaging.ImageInfo;
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.Imaging;
@@ -25,8 +22,22 @@ import org.joda.time.format.DateTimeFormatterBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.rvesse.baby.photo.sorter.cache.CachedMetadata;
+import com.github.rvesse.baby.photo.sorter.cache.MetadataCache;
+import com.github.rvesse.baby.photo.sorter.exif.ExifDateReader;
+import com.github.rvesse.baby.photo.sorter.exif.ExifDates;
+import com.github.rvesse.baby.photo.sorter.hashing.FileHasher;
+import com.github.rvesse.baby.photo.sorter.hashing.HashAlgorithm;
+import com.github.rvesse.baby.photo.sorter.metrics.Counter;
 import com.github.rvesse.baby.photo.sorter.model.events.Event;
 
+/**
+ * A photo
+ * <p>
+ * Photos are lightweight views over a row of a {@link PhotoCatalog} which holds
+ * the actual state, so even very large libraries can be held in memory.
+ * </p>
+ */
 public class Photo {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Photo.class);
@@ -48,54 +59,158 @@ public class Photo {
                 .toFormatter();
     //@formatter:on
 
-    private File file;
-    private File sourceDirectory, targetFile;
-    private final Path path;
-    private boolean loadedCreationDate = false, loadedHash = false;
-    private Instant creationDate = null;
-    private long sequenceId = 1;
-    private Event event = null;
-    private String hash;
+    /**
+     * Number of bytes from the start and end of a photo used to calculate its
+     * {@link #partialHash()}
+     */
+    public static final int PARTIAL_HASH_BLOCK_SIZE = 64 * 1024;
+
+    private final PhotoCatalog catalog;
+    private final int row;
+    // Lazily loaded values are guarded by the volatile loaded flags which are
+    // only ever set after the values themselves, this allows values to be read
+    // without locking once loaded
+    private volatile boolean loadedAttributes = false, loadedCreationDate = false, loadedHash = false,
+            loadedPartialHash = false;
+
+    /**
+     * Creates a new view over a catalog row, use
+     * {@link PhotoCatalog#add(File, BasicFileAttributes, File)} to create
+     * photos
+     * 
+     * @param catalog
+     *            Catalog
+     * @param row
+     *            Row
+     */
+    Photo(PhotoCatalog catalog, int row) {
+        this.catalog = catalog;
+        this.row = row;
+    }
 
-    public Photo(File file) {
-        this.file = file;
-        this.path = Paths.get(this.file.toURI());
+    private PhotoCatalog.Page page() {
+        return this.catalog.page(this.row);
+    }
+
+    private int offset() {
+        return PhotoCatalog.offset(this.row);
+    }
+
+    /**
+     * Gets the catalog row this photo is a view over
+     * 
+     * @return Row
+     */
+    public int row() {
+        return this.row;
     }
 
     public File getFile() {
-        return this.file;
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        return new File(this.catalog.directory(page.directories[i]), page.names[i]);
     }
 
     public void setFile(File f) {
-        this.file = f;
+        File absolute = f.getAbsoluteFile();
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        page.directories[i] = this.catalog.directoryId(absolute.getParentFile());
+        page.names[i] = absolute.getName();
+    }
+
+    private Path getPath() {
+        return getFile().toPath();
     }
 
     public File getTargetFile() {
-        return this.targetFile;
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        if (page.targetDirectories[i] < 0)
+            return null;
+        return new File(this.catalog.directory(page.targetDirectories[i]), page.targetNames[i]);
     }
 
     public void setTargetFile(File target) {
-        this.targetFile = target;
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        if (target == null) {
+            page.targetDirectories[i] = -1;
+            page.targetNames[i] = null;
+        } else {
+            File absolute = target.getAbsoluteFile();
+            page.targetDirectories[i] = this.catalog.directoryId(absolute.getParentFile());
+            page.targetNames[i] = absolute.getName();
+        }
     }
 
     public boolean isNoOp() {
-        if (StringUtils.equals(this.file.getParentFile().getAbsolutePath(),
-                this.targetFile.getParentFile().getAbsolutePath())) {
-            // Source and Target Directory are the same
-            if (StringUtils.equals(this.file.getName(), this.targetFile.getName())) {
-                // Source and Target Filename are the same
-                return true;
-            }
-        }
-        return false;
+        // Directories are interned so the same directory always has the same
+        // ID
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        return page.directories[i] == page.targetDirectories[i]
+                && StringUtils.equals(page.names[i], page.targetNames[i]);
     }
 
     public File getSourceDirectory() {
-        return this.sourceDirectory != null ? this.sourceDirectory : this.file.getParentFile();
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        int id = page.sourceDirectories[i];
+        return this.catalog.directory(id >= 0 ? id : page.directories[i]);
     }
 
     public void setSourceDirectory(File source) {
-        this.sourceDirectory = source;
+        page().sourceDirectories[offset()] = source != null ? this.catalog.directoryId(source) : -1;
+    }
+
+    /**
+     * Gets the size of the photo in bytes
+     * 
+     * @return Size
+     */
+    public long getSize() {
+        return loadAttributes() ? page().sizes[offset()] : getFile().length();
+    }
+
+    /**
+     * Ensures the size and times of the photo file are known, reading the file
+     * attributes if the photo was not added with them
+     * <p>
+     * Once known they may be read concurrently without any locking.
+     * </p>
+     * 
+     * @return True if known, false if the attributes could not be read
+     */
+    private boolean loadAttributes() {
+        if (this.loadedAttributes)
+            return true;
+
+        synchronized (this) {
+            PhotoCatalog.Page page = page();
+            int i = offset();
+            if (page.sizes[i] < 0) {
+                try {
+                    page.setAttributes(i, Files.readAttributes(getPath(), BasicFileAttributes.class),
+                            this.catalog.cache() != null);
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to read file attributes for photo {} - {}", getFile().getAbsolutePath(),
+                            e.getMessage());
+                    return false;
+                }
+            }
+            this.loadedAttributes = true;
+            return true;
+        }
+    }
+
+    private CachedMetadata getCachedMetadata() {
+        MetadataCache cache = this.catalog.cache();
+        if (cache == null || !loadAttributes())
+            return null;
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        return cache.get(getFile(), page.sizes[i], page.lastModifiedTimes[i], page.fileKeys[i]);
     }
 
     /**
@@ -106,7 +221,7 @@ public class Photo {
     public synchronized double getMegapixels() {
         ImageInfo info;
         try {
-            info = Imaging.getImageInfo(this.file);
+            info = Imaging.getImageInfo(getFile());
             double pixels = info.getWidth() * info.getHeight();
             return pixels / 1000000;
 
@@ -122,82 +237,190 @@ public class Photo {
      * Gets the creation date for the photo
      * <p>
      * Calculated at first request by trying to read the EXIF metadata present
-     * in the file (if any)
+     * in the file (if any), if a metadata cache is in use and has a valid entry
+     * for the photo then the cached creation date is used instead.
+     * </p>
+     * <p>
+     * Once loaded the creation date may be read concurrently without any
+     * locking.
      * </p>
      * 
      * @return
      */
-    public synchronized Instant creationDate() {
-        if (loadedCreationDate)
-            return creationDate;
+    public Instant creationDate() {
+        long millis = creationDateMillis();
+        return millis != PhotoCatalog.NO_DATE ? new Instant(millis) : null;
+    }
+
+    /**
+     * Gets the creation date for the photo as epoch milliseconds
+     * <p>
+     * As {@link #creationDate()} but avoids creating an {@link Instant}.
+     * </p>
+     * 
+     * @return Creation date, or {@link PhotoCatalog#NO_DATE} if the photo has
+     *         no valid creation date
+     */
+    public long creationDateMillis() {
+        if (this.loadedCreationDate)
+            return page().creationDates[offset()];
+
+        synchronized (this) {
+            if (!this.loadedCreationDate)
+                loadCreationDateOnce();
+            return page().creationDates[offset()];
+        }
+    }
+
+    void setCreationDate(long millis, CreationDateSource source) {
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        page.creationDates[i] = millis;
+        page.creationDateSources[i] = source != null ? (byte) source.ordinal() : -1;
+        this.loadedCreationDate = true;
+    }
 
+    private void loadCreationDateOnce() {
+        CachedMetadata cached = getCachedMetadata();
+        if (cached != null && cached.hasCreationDate()) {
+            setCreationDate(cached.creationDate(), cached.creationDateSource());
+            Counter.CachedCreationDates.increment();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Obtained cached creation date for photo {} as {}", getFile().getAbsolutePath(),
+                        new Instant(cached.creationDate()).toString());
+            }
+            return;
+        }
+
+        loadCreationDate();
+        MetadataCache cache = this.catalog.cache();
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        if (cache != null && page.creationDates[i] != PhotoCatalog.NO_DATE && loadAttributes()) {
+            cache.putCreationDate(getFile(), page.sizes[i], page.lastModifiedTimes[i], page.fileKeys[i],
+                    page.creationDates[i], CreationDateSource.values()[page.creationDateSources[i]]);
+        }
+    }
+
+    /**
+     * Gets the source of the photos creation date
+     * 
+     * @return Creation date source, or {@code null} if the photo has no valid
+     *         creation date
+     */
+    public CreationDateSource creationDateSource() {
+        creationDateMillis();
+        byte source = page().creationDateSources[offset()];
+        return source >= 0 ? CreationDateSource.values()[source] : null;
+    }
+
+    private void loadCreationDate() {
         try {
+            // Try the fast path first, this only falls back to a full metadata
+            // parse if it is unable to decide
+            ExifDates dates = null;
             try {
-                ImageMetadata imageMeta = Imaging.getMetadata(this.file);
-
-                if (imageMeta instanceof JpegImageMetadata) {
-                    // JPEG Images
-                    JpegImageMetadata jpegMeta = (JpegImageMetadata) imageMeta;
-                    TiffField dtOriginal = jpegMeta
-                            .findEXIFValueWithExactMatch(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
-                    setCreationDateFromExif(dtOriginal);
-                    if (this.loadedCreationDate)
-                        return this.creationDate;
-
-                    TiffField dtDigitized = jpegMeta
-                            .findEXIFValueWithExactMatch(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED);
-                    setCreationDateFromExif(dtDigitized);
-                    if (this.loadedCreationDate)
-                        return this.creationDate;
-                } else if (imageMeta instanceof TiffImageMetadata) {
-                    // TIFF Images
-                    TiffImageMetadata tiffMeta = (TiffImageMetadata) imageMeta;
-                    TiffField dtOriginal = tiffMeta.findField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, true);
-                    setCreationDateFromExif(dtOriginal);
-                    if (this.loadedCreationDate)
-                        return this.creationDate;
-
-                    TiffField dtDigitized = tiffMeta.findField(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED, true);
-                    setCreationDateFromExif(dtDigitized);
-                    if (this.loadedCreationDate)
-                        return this.creationDate;
+                dates = ExifDateReader.read(getPath());
+            } catch (IOException e) {
+                LOGGER.debug("Fast EXIF reader failed for photo {} - {}", getFile().getAbsolutePath(),
+                        e.getMessage());
+            }
+
+            if (dates != null) {
+                setCreationDateFromExif(dates.original(), "DateTimeOriginal", CreationDateSource.EXIF_ORIGINAL);
+                if (!this.loadedCreationDate)
+                    setCreationDateFromExif(dates.digitized(), "DateTimeDigitized",
+                            CreationDateSource.EXIF_DIGITIZED);
+                if (this.loadedCreationDate) {
+                    Counter.ExifFastPath.increment();
+                    return;
                 }
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("EXIF medata for photo {} did not contain a creation/digitization date",
-                            this.file.getAbsolutePath());
+                            getFile().getAbsolutePath());
+                }
+            } else {
+                loadCreationDateFromMetadata();
+                if (this.loadedCreationDate) {
+                    Counter.ExifSlowPath.increment();
+                    return;
                 }
-            } catch (ImageReadException e) {
-                // Ignore and fallback to using file attributes
-                LOGGER.debug("Failed to obtain EXIF metadata for photo {}", this.file.getAbsolutePath());
             }
 
             // Fall back to file attributes
-            BasicFileAttributes attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
-            loadedCreationDate = true;
-            this.creationDate = new Instant(attributes.creationTime().toMillis());
+            if (!loadAttributes())
+                throw new IOException("File attributes unavailable");
+            long millis = page().creationTimes[offset()];
+            setCreationDate(millis, CreationDateSource.FILESYSTEM);
+            Counter.FileSystemFallback.increment();
             if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Obtained file system creation date for photo {} as {}", this.file.getAbsolutePath(),
-                        this.creationDate.toString());
+                LOGGER.debug("Obtained file system creation date for photo {} as {}", getFile().getAbsolutePath(),
+                        new Instant(millis).toString());
             }
         } catch (IOException e) {
-            LOGGER.warn("Photo {} has invalid creation date", this.file.getAbsolutePath());
+            LOGGER.warn("Photo {} has invalid creation date", getFile().getAbsolutePath());
+            Counter.InvalidCreationDates.increment();
             loadedCreationDate = true;
         }
+    }
 
-        return this.creationDate;
+    private void loadCreationDateFromMetadata() throws IOException {
+        try {
+            ImageMetadata imageMeta = Imaging.getMetadata(getFile());
+
+            if (imageMeta instanceof JpegImageMetadata) {
+                // JPEG Images
+                JpegImageMetadata jpegMeta = (JpegImageMetadata) imageMeta;
+                TiffField dtOriginal = jpegMeta
+                        .findEXIFValueWithExactMatch(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
+                setCreationDateFromExif(dtOriginal, CreationDateSource.EXIF_ORIGINAL);
+                if (this.loadedCreationDate)
+                    return;
+
+                TiffField dtDigitized = jpegMeta
+                        .findEXIFValueWithExactMatch(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED);
+                setCreationDateFromExif(dtDigitized, CreationDateSource.EXIF_DIGITIZED);
+                if (this.loadedCreationDate)
+                    return;
+            } else if (imageMeta instanceof TiffImageMetadata) {
+                // TIFF Images
+                TiffImageMetadata tiffMeta = (TiffImageMetadata) imageMeta;
+                TiffField dtOriginal = tiffMeta.findField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, true);
+                setCreationDateFromExif(dtOriginal, CreationDateSource.EXIF_ORIGINAL);
+                if (this.loadedCreationDate)
+                    return;
+
+                TiffField dtDigitized = tiffMeta.findField(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED, true);
+                setCreationDateFromExif(dtDigitized, CreationDateSource.EXIF_DIGITIZED);
+                if (this.loadedCreationDate)
+                    return;
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("EXIF medata for photo {} did not contain a creation/digitization date",
+                        getFile().getAbsolutePath());
+            }
+        } catch (ImageReadException e) {
+            // Ignore and fallback to using file attributes
+            LOGGER.debug("Failed to obtain EXIF metadata for photo {}", getFile().getAbsolutePath());
+        }
     }
 
-    private void setCreationDateFromExif(TiffField field) throws ImageReadException {
+    private void setCreationDateFromExif(TiffField field, CreationDateSource source) throws ImageReadException {
         if (field != null) {
+            setCreationDateFromExif(field.getStringValue(), field.getTagName(), source);
+        }
+    }
+
+    private void setCreationDateFromExif(String value, String tagName, CreationDateSource source) {
+        if (value != null) {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Obtained EXIF metadata creation date for photo {} as {} from tag {}",
-                        this.file.getAbsolutePath(), field.getStringValue(), field.getTagName());
+                        getFile().getAbsolutePath(), value, tagName);
             }
             try {
-                this.creationDate = Instant.parse(field.getStringValue(), EXIF_DATE_FORMAT);
-                this.loadedCreationDate = true;
+                setCreationDate(Instant.parse(value, EXIF_DATE_FORMAT).getMillis(), source);
             } catch (IllegalArgumentException e) {
-                LOGGER.debug("Failed to parse EXIF metadata date for photo {}", this.file.getAbsolutePath());
+                LOGGER.debug("Failed to parse EXIF metadata date for photo {}", getFile().getAbsolutePath());
             }
         }
     }
@@ -210,27 +433,107 @@ public class Photo {
      * in the meantime.
      * </p>
      * 
-     * @return
+     * @param algorithm
+     *            Hash algorithm
+     * @return Hash or {@code null} if it could not be calculated
      */
-    public synchronized String fileHash() {
-        if (this.loadedHash)
-            return this.hash;
+    public byte[] fileHash(HashAlgorithm algorithm) {
+        if (this.loadedHash && page().hashAlgorithms[offset()] == algorithm.ordinal())
+            return page().hashes[offset()];
+
+        synchronized (this) {
+            if (this.loadedHash && page().hashAlgorithms[offset()] == algorithm.ordinal())
+                return page().hashes[offset()];
+            return loadHashOnce(algorithm);
+        }
+    }
+
+    /**
+     * Gets the hash of the photo if it is already known, either because it has
+     * been calculated or is cached, without calculating it
+     * 
+     * @param algorithm
+     *            Hash algorithm
+     * @return Hash, or {@code null} if not known
+     */
+    public byte[] knownHash(HashAlgorithm algorithm) {
+        synchronized (this) {
+            if (this.loadedHash && page().hashAlgorithms[offset()] == algorithm.ordinal())
+                return page().hashes[offset()];
+        }
+        CachedMetadata cached = getCachedMetadata();
+        return cached != null && cached.hasHash(algorithm.getName()) ? cached.hash() : null;
+    }
+
+    private byte[] loadHashOnce(HashAlgorithm algorithm) {
+        this.loadedHash = false;
+        PhotoCatalog.Page page = page();
+        int i = offset();
+        page.hashAlgorithms[i] = (byte) algorithm.ordinal();
+
+        CachedMetadata cached = getCachedMetadata();
+        if (cached != null && cached.hasHash(algorithm.getName())) {
+            page.hashes[i] = cached.hash();
+            this.loadedHash = true;
+            return page.hashes[i];
+        }
 
-        MessageDigest sha512 = DigestUtils.getSha512Digest();
-        DigestUtils digest = new DigestUtils(sha512);
         try {
-            this.hash = digest.digestAsHex(this.file);
+            page.hashes[i] = FileHasher.hash(getPath(), algorithm);
+            MetadataCache cache = this.catalog.cache();
+            if (cache != null && loadAttributes()) {
+                cache.putHash(getFile(), page.sizes[i], page.lastModifiedTimes[i], page.fileKeys[i],
+                        algorithm.getName(), page.hashes[i]);
+            }
         } catch (IOException e) {
-            LOGGER.warn("Failed to calculate hash for photo {} - {}", this.file.getAbsolutePath(), e.getMessage());
-            this.hash = null;
+            LOGGER.warn("Failed to calculate hash for photo {} - {}", getFile().getAbsolutePath(), e.getMessage());
+            page.hashes[i] = null;
         }
 
         this.loadedHash = true;
-        return this.hash;
+        return page.hashes[i];
+    }
+
+    /**
+     * Gets a partial hash for the photo
+     * <p>
+     * This is a hash over only the first and last
+     * {@value #PARTIAL_HASH_BLOCK_SIZE} bytes of the file so is much cheaper
+     * to calculate than the full {@link #fileHash(HashAlgorithm)}. Photos with
+     * different partial hashes are guaranteed to differ, photos with identical
+     * partial hashes may or may not be identical.
+     * </p>
+     * 
+     * @param algorithm
+     *            Hash algorithm
+     * @return Partial hash or {@code null} if it could not be calculated
+     */
+    public byte[] partialHash(HashAlgorithm algorithm) {
+        if (this.loadedPartialHash && page().partialHashAlgorithms[offset()] == algorithm.ordinal())
+            return page().partialHashes[offset()];
+
+        synchronized (this) {
+            PhotoCatalog.Page page = page();
+            int i = offset();
+            if (this.loadedPartialHash && page.partialHashAlgorithms[i] == algorithm.ordinal())
+                return page.partialHashes[i];
+
+            this.loadedPartialHash = false;
+            page.partialHashAlgorithms[i] = (byte) algorithm.ordinal();
+            try {
+                page.partialHashes[i] = FileHasher.hashHeadAndTail(getPath(), algorithm, PARTIAL_HASH_BLOCK_SIZE);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to calculate partial hash for photo {} - {}", getFile().getAbsolutePath(),
+                        e.getMessage());
+                page.partialHashes[i] = null;
+            }
+            this.loadedPartialHash = true;
+            return page.partialHashes[i];
+        }
     }
 
     public boolean hasValidCreationDate() {
-        return this.creationDate() != null;
+        return creationDateMillis() != PhotoCatalog.NO_DATE;
     }
 
     public long ageInDays(Configuration config) {
@@ -278,36 +581,7 @@ public class Photo {
     }
 
     public String getAgeText(Configuration config) {
-        Instant i = creationDate();
-        if (i == null)
-            return "Unknown";
-
-        if (i.isBefore(config.dateOfBirth())) {
-            long weeksOfPregnancy = config.weeksOfPregnancy();
-
-            Period p = new Period(i, config.dueDate());
-            Duration d = p.toDurationFrom(i);
-            return String.format("%d Weeks Pregnant", weeksOfPregnancy - (d.getStandardDays() / 7));
-        }
-
-        long days = ageInDays(config);
-        if (days != Long.MIN_VALUE && days / 7 < config.weeksThreshold()) {
-            return String.format("%d Days", days);
-        }
-        long weeks = ageInWeeks(config);
-        long months = ageInMonths(config);
-        if (weeks != Long.MIN_VALUE && weeks >= config.weeksThreshold() && months < config.monthsThreshold()) {
-            return String.format("%d Weeks", weeks);
-        } else if (months != Long.MIN_VALUE && months >= config.monthsThreshold()
-                && (months / 12) < config.yearsThreshold()) {
-            return String.format("%d Months", months);
-        }
-        long years = ageInYears(config);
-        if (years != Long.MIN_VALUE) {
-            return String.format("%d Years", years);
-        } else {
-            return "Unknown";
-        }
+        return config.ageBrackets().label(creationDate());
     }
 
     public String getName(Configuration config) {
@@ -315,25 +589,43 @@ public class Photo {
     }
 
     public String getExtension() {
-        return this.file.getName().substring(this.file.getName().lastIndexOf('.'));
+        String name = page().names[offset()];
+        return name.substring(name.lastIndexOf('.'));
     }
 
     public long getSequenceId() {
-        return this.sequenceId;
+        return page().sequenceIds[offset()];
     }
 
     public void setSequenceId(long id) {
-        this.sequenceId = id;
+        page().sequenceIds[offset()] = id;
+    }
+
+    /**
+     * Gets the name of the group the photo was sorted into
+     * 
+     * @return Group name, or {@code null} if not yet grouped
+     */
+    public String getGroup() {
+        return this.catalog.group(page().groups[offset()]);
+    }
+
+    public void setGroup(String group) {
+        page().groups[offset()] = this.catalog.groupId(group);
     }
 
     public Event getEvent() {
-        return this.event;
+        return this.catalog.event(page().events[offset()]);
     }
 
     public void setEvent(Event event) {
-        this.event = event;
+        page().events[offset()] = this.catalog.eventId(event);
     }
 
+    /**
+     * Photos are equal if they are views over the same row of the same
+     * catalog, so comparing and hashing photos never needs their file
+     */
     @Override
     public boolean equals(Object other) {
         if (other == null)
@@ -341,7 +633,7 @@ public class Photo {
 
         if (other instanceof Photo) {
             Photo otherPhoto = (Photo) other;
-            return this.file.equals(otherPhoto.file);
+            return this.catalog == otherPhoto.catalog && this.row == otherPhoto.row;
         } else {
             return false;
         }
@@ -349,6 +641,11 @@ public class Photo {
 
     @Override
     public int hashCode() {
-        return this.file.hashCode();
+        return this.row;
+    }
+
+    @Override
+    public String toString() {
+        return getFile().getAbsolutePath();
     }
 }
@@ -0,0 +1,276 @@
+package com.github.rvesse.baby.photo.sorter.model;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.rvesse.baby.photo.sorter.cache.CachedMetadata;
+import com.github.rvesse.baby.photo.sorter.cache.MetadataCache;
+import com.github.rvesse.baby.photo.sorter.model.events.Event;
+
+/**
+ * A compact columnar catalog of photos
+ * <p>
+ * Rather than each photo holding its own {@link File} objects, {@code Instant}
+ * and so forth the catalog stores photos as rows in a set of parallel arrays,
+ * directories, group names and events are interned so each row holds only an
+ * {@code int} for them and creation dates are held as epoch milliseconds. File
+ * attributes are not retained, only the size and times that are needed later,
+ * plus the file key when a metadata cache is in use. A {@link Photo} is a
+ * lightweight view over a single row.
+ * </p>
+ * <p>
+ * Rows are stored in fixed size pages which never move once allocated, so
+ * photos may be added while other threads are working with existing rows.
+ * Adding photos and interning values is synchronized, each row is otherwise
+ * only ever written by the thread currently working with that photo and reads
+ * rely on the same happens-before edges, e.g. joining worker threads, as any
+ * other per-photo state.
+ * </p>
+ */
+public class PhotoCatalog implements PhotoSink {
+
+    /**
+     * Value stored for photos with no valid creation date
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    static final class Page {
+        final Photo[] views = new Photo[PAGE_SIZE];
+        final int[] directories = new int[PAGE_SIZE];
+        final String[] names = new String[PAGE_SIZE];
+        final int[] sourceDirectories = new int[PAGE_SIZE];
+        final int[] targetDirectories = new int[PAGE_SIZE];
+        final String[] targetNames = new String[PAGE_SIZE];
+        final long[] sizes = new long[PAGE_SIZE];
+        final long[] lastModifiedTimes = new long[PAGE_SIZE];
+        final long[] creationTimes = new long[PAGE_SIZE];
+        final String[] fileKeys = new String[PAGE_SIZE];
+        final long[] creationDates = new long[PAGE_SIZE];
+        final byte[] creationDateSources = new byte[PAGE_SIZE];
+        final byte[][] hashes = new byte[PAGE_SIZE][];
+        final byte[] hashAlgorithms = new byte[PAGE_SIZE];
+        final byte[][] partialHashes = new byte[PAGE_SIZE][];
+        final byte[] partialHashAlgorithms = new byte[PAGE_SIZE];
+        final int[] groups = new int[PAGE_SIZE];
+        final int[] events = new int[PAGE_SIZE];
+        final long[] sequenceIds = new long[PAGE_SIZE];
+
+        Page() {
+            Arrays.fill(this.sizes, -1);
+            Arrays.fill(this.sourceDirectories, -1);
+            Arrays.fill(this.targetDirectories, -1);
+            Arrays.fill(this.creationDates, NO_DATE);
+            Arrays.fill(this.creationDateSources, (byte) -1);
+            Arrays.fill(this.hashAlgorithms, (byte) -1);
+            Arrays.fill(this.partialHashAlgorithms, (byte) -1);
+            Arrays.fill(this.groups, -1);
+            Arrays.fill(this.events, -1);
+            Arrays.fill(this.sequenceIds, 1);
+        }
+
+        void setAttributes(int i, BasicFileAttributes attributes, boolean keepFileKey) {
+            this.lastModifiedTimes[i] = attributes.lastModifiedTime().toMillis();
+            this.creationTimes[i] = attributes.creationTime().toMillis();
+            if (keepFileKey)
+                this.fileKeys[i] = CachedMetadata.fileKey(attributes);
+            // Size is written last as it marks the attributes as loaded
+            this.sizes[i] = attributes.size();
+        }
+    }
+
+    /**
+     * Table of interned values, lookups by ID need no locking
+     */
+    private static final class Table<T> {
+        private final Map<T, Integer> ids = new HashMap<>();
+        private volatile Object[] values = new Object[16];
+        private int size = 0;
+
+        synchronized int intern(T value) {
+            Integer id = this.ids.get(value);
+            if (id != null)
+                return id;
+
+            Object[] values = this.values;
+            if (this.size == values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            values[this.size] = value;
+            this.ids.put(value, this.size);
+            // Always republish so readers of the new ID see the value
+            this.values = values;
+            return this.size++;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int id) {
+            return id < 0 ? null : (T) this.values[id];
+        }
+
+        synchronized int size() {
+            return this.size;
+        }
+    }
+
+    private final MetadataCache cache;
+    private final Table<File> directories = new Table<>();
+    private final Table<String> groups = new Table<>();
+    private final Table<Event> events = new Table<>();
+    private volatile Page[] pages = new Page[0];
+    private volatile int size = 0;
+
+    /**
+     * Creates a new catalog
+     *
+     * @param cache
+     *            Metadata cache, may be {@code null} if not using a cache
+     */
+    public PhotoCatalog(MetadataCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public synchronized Photo add(File file, BasicFileAttributes attributes, File sourceDirectory) {
+        int row = this.size;
+        Page[] pages = this.pages;
+        if ((row >>> PAGE_BITS) == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length + 1);
+            pages[pages.length - 1] = new Page();
+        }
+        Page page = pages[row >>> PAGE_BITS];
+        int i = offset(row);
+
+        File absolute = file.getAbsoluteFile();
+        page.directories[i] = directoryId(absolute.getParentFile());
+        page.names[i] = absolute.getName();
+        page.sourceDirectories[i] = sourceDirectory != null ? directoryId(sourceDirectory) : -1;
+        if (attributes != null)
+            page.setAttributes(i, attributes, this.cache != null);
+        Photo photo = new Photo(this, row);
+        page.views[i] = photo;
+
+        this.pages = pages;
+        this.size = row + 1;
+        return photo;
+    }
+
+    /**
+     * Adds a photo whose creation date is already known to the catalog
+     *
+     * @param file
+     *            File
+     * @param sourceDirectory
+     *            Source directory the photo is attributed to, may be
+     *            {@code null} in which case its parent directory is used
+     * @param creationDate
+     *            Creation date, or {@link #NO_DATE} if the photo has no valid
+     *            creation date
+     * @param creationDateSource
+     *            Creation date source, may be {@code null} if no valid
+     *            creation date
+     * @return Photo
+     */
+    public Photo add(File file, File sourceDirectory, long creationDate, CreationDateSource creationDateSource) {
+        Photo photo = add(file, null, sourceDirectory);
+        photo.setCreationDate(creationDate, creationDateSource);
+        return photo;
+    }
+
+    /**
+     * Gets the number of photos in the catalog
+     *
+     * @return Number of photos
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the photo at the given row
+     *
+     * @param row
+     *            Row
+     * @return Photo
+     */
+    public Photo get(int row) {
+        if (row < 0 || row >= this.size)
+            throw new IndexOutOfBoundsException("Row " + row + " not in catalog of size " + this.size);
+        return page(row).views[offset(row)];
+    }
+
+    /**
+     * Gets a view of all the photos in the catalog in the order they were
+     * added
+     *
+     * @return Photos
+     */
+    public List<Photo> photos() {
+        int size = this.size;
+        return new AbstractList<Photo>() {
+            @Override
+            public Photo get(int index) {
+                if (index >= size)
+                    throw new IndexOutOfBoundsException("Index " + index + " not in list of size " + size);
+                return PhotoCatalog.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Gets the number of distinct directories referenced by the catalog
+     *
+     * @return Number of directories
+     */
+    public int directoryCount() {
+        return this.directories.size();
+    }
+
+    MetadataCache cache() {
+        return this.cache;
+    }
+
+    Page page(int row) {
+        return this.pages[row >>> PAGE_BITS];
+    }
+
+    static int offset(int row) {
+        return row & PAGE_MASK;
+    }
+
+    int directoryId(File dir) {
+        return this.directories.intern(dir.getAbsoluteFile());
+    }
+
+    File directory(int id) {
+        return this.directories.get(id);
+    }
+
+    int groupId(String group) {
+        return group != null ? this.groups.intern(group) : -1;
+    }
+
+    String group(int id) {
+        return this.groups.get(id);
+    }
+
+    int eventId(Event event) {
+        return event != null ? this.events.intern(event) : -1;
+    }
+
+    Event event(int id) {
+        return this.events.get(id);
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.rvesse.baby.photo.sorter.model;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Receives photos as they are discovered
+ */
+public interface PhotoSink {
+
+    /**
+     * Adds a discovered photo
+     * 
+     * @param file
+     *            File
+     * @param attributes
+     *            File attributes obtained when the photo was discovered, may be
+     *            {@code null} in which case they are read on demand
+     * @param sourceDirectory
+     *            Source directory the photo is attributed to, may be
+     *            {@code null} in which case its parent directory is used
+     * @return Photo, or {@code null} if the sink does not retain photos in
+     *         memory
+     */
+    Photo add(File file, BasicFileAttributes attributes, File sourceDirectory);
+}
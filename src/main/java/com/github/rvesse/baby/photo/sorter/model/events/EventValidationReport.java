@@ -0,0 +1,120 @@
+package com.github.rvesse.baby.photo.sorter.model.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Report of conflicts found when validating a set of events
+ */
+public class EventValidationReport {
+
+    public enum ConflictType {
+        /**
+         * The earlier event entirely contains the later event, so no photos
+         * will ever be grouped into the later event
+         */
+        CONTAINS,
+        /**
+         * The events partially overlap, photos in the overlap are grouped into
+         * the earlier event
+         */
+        OVERLAPS
+    }
+
+    public static class Conflict {
+        private final ConflictType type;
+        private final Event first, second;
+
+        public Conflict(ConflictType type, Event first, Event second) {
+            this.type = type;
+            this.first = first;
+            this.second = second;
+        }
+
+        public ConflictType type() {
+            return this.type;
+        }
+
+        public Event first() {
+            return this.first;
+        }
+
+        public Event second() {
+            return this.second;
+        }
+
+        @Override
+        public String toString() {
+            switch (this.type) {
+            case CONTAINS:
+                return String.format(
+                        "Event %s contains event %s, as a result no photos will be grouped into event %s because photos will always match event %s which starts first",
+                        this.first.name(), this.second.name(), this.second.name(), this.first.name());
+            default:
+                return String.format(
+                        "Event %s overlaps with event %s, please note that photos will be grouped into the first containing event",
+                        this.first.name(), this.second.name());
+            }
+        }
+    }
+
+    private final List<Conflict> conflicts = new ArrayList<>();
+
+    void add(Conflict conflict) {
+        this.conflicts.add(conflict);
+    }
+
+    /**
+     * Validates events which must already be sorted by start time
+     * <p>
+     * Makes a single sweep over the events keeping the set of earlier events
+     * that are still active, i.e. that end after the current event starts.
+     * Events that have ended are dropped from the set as the sweep passes them
+     * so each event is only compared against the earlier events it actually
+     * overlaps, every one of which is reported as a conflict.
+     * </p>
+     * 
+     * @param events
+     *            Sorted events
+     * @return Validation report
+     */
+    public static EventValidationReport validate(List<Event> events) {
+        EventValidationReport report = new EventValidationReport();
+        List<Event> active = new ArrayList<>();
+        for (Event e : events) {
+            // Events that end before this event starts can't overlap it, nor
+            // any later event
+            active.removeIf(earlier -> !earlier.end().isAfter(e.start()));
+            for (Event earlier : active) {
+                report.add(new Conflict(
+                        earlier.end().isAfter(e.end()) ? ConflictType.CONTAINS : ConflictType.OVERLAPS, earlier, e));
+            }
+            active.add(e);
+        }
+        return report;
+    }
+
+    public List<Conflict> getConflicts() {
+        return Collections.unmodifiableList(this.conflicts);
+    }
+
+    public long count(ConflictType type) {
+        return this.conflicts.stream().filter(c -> c.type() == type).count();
+    }
+
+    public boolean isValid() {
+        return this.conflicts.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(this.conflicts.size()).append(" conflicting events (").append(count(ConflictType.CONTAINS))
+                .append(" contained, ").append(count(ConflictType.OVERLAPS)).append(" overlapping):");
+        for (Conflict c : this.conflicts) {
+            builder.append(System.lineSeparator()).append("  ").append(c);
+        }
+        return builder.toString();
+    }
+}
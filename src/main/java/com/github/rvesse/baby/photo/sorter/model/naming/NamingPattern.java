@@ -2,35 +2,136 @@ package com.github.rvesse.baby.photo.sorter.model.naming;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import com.github.rvesse.baby.photo.sorter.model.Configuration;
 import com.github.rvesse.baby.photo.sorter.model.Photo;
 import com.github.rvesse.baby.photo.sorter.model.naming.elements.NamePatternElement;
+import com.github.rvesse.baby.photo.sorter.model.naming.elements.SequenceElement;
+import com.github.rvesse.baby.photo.sorter.utils.StringUtils;
 
 public class NamingPattern {
 
+    private static final int MAX_RETAINED_BUFFER = 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
     private final List<NamePatternElement> elements = new ArrayList<>();
+    // When compiled the pattern the compiled form was produced from and the
+    // configuration it was compiled for
+    private final NamingPattern source;
+    private final Configuration compiledFor;
     
     public NamingPattern(Collection<NamePatternElement> elements) {
-        this.elements.addAll(elements);
+        this(elements, null, null);
     }
     
     public NamingPattern(NamePatternElement...elements) {
         for (NamePatternElement e : elements) {
             this.elements.add(e);
         }
+        this.source = null;
+        this.compiledFor = null;
+    }
+
+    NamingPattern(Collection<NamePatternElement> elements, NamingPattern source, Configuration compiledFor) {
+        this.elements.addAll(elements);
+        this.source = source;
+        this.compiledFor = compiledFor;
+    }
+
+    List<NamePatternElement> elements() {
+        return Collections.unmodifiableList(this.elements);
+    }
+
+    /**
+     * Gets whether this is a compiled pattern
+     * 
+     * @return True if compiled, false otherwise
+     * @see NamingPatternBuilder#compile(NamingPattern, Configuration)
+     */
+    public boolean isCompiled() {
+        return this.compiledFor != null;
     }
     
     public String getName(Photo photo, Configuration config) {
-        StringBuilder name = new StringBuilder();
+        if (this.compiledFor != null && this.compiledFor != config) {
+            // Compiled constants are only valid for the configuration they
+            // were compiled for
+            return this.source.getName(photo, config);
+        }
+
+        StringBuilder name = BUFFER.get();
+        name.setLength(0);
         for (NamePatternElement e : elements) {
-            name.append(e.getText(photo, config));
+            e.appendText(name, photo, config);
         }
-        return name.toString();
+        String result = name.toString();
+        if (name.capacity() > MAX_RETAINED_BUFFER) {
+            // Don't hold onto unusually large buffers
+            BUFFER.remove();
+        }
+        return result;
     }
     
+    /**
+     * Recovers the sequence ID of a photo from a name previously generated by
+     * this pattern
+     * <p>
+     * This is only possible when the pattern contains exactly one sequence ID
+     * element, the rest of the name must be exactly what this pattern renders
+     * for the photo and the sequence ID must be padded as currently configured.
+     * </p>
+     * 
+     * @param photo
+     *            Photo
+     * @param config
+     *            Configuration
+     * @param name
+     *            Existing name, excluding the file extension
+     * @return Sequence ID, or {@code -1} if the name could not have been
+     *         generated by this pattern
+     */
+    public long parseSequenceId(Photo photo, Configuration config, String name) {
+        if (this.compiledFor != null && this.compiledFor != config)
+            return this.source.parseSequenceId(photo, config, name);
+
+        int sequenceIndex = -1;
+        for (int i = 0; i < this.elements.size(); i++) {
+            if (this.elements.get(i) instanceof SequenceElement) {
+                if (sequenceIndex != -1)
+                    return -1;
+                sequenceIndex = i;
+            }
+        }
+        if (sequenceIndex == -1)
+            return -1;
+
+        StringBuilder prefix = new StringBuilder(), suffix = new StringBuilder();
+        for (int i = 0; i < this.elements.size(); i++) {
+            if (i != sequenceIndex)
+                this.elements.get(i).appendText(i < sequenceIndex ? prefix : suffix, photo, config);
+        }
+        if (name.length() <= prefix.length() + suffix.length() || !name.startsWith(prefix.toString())
+                || !name.endsWith(suffix.toString()))
+            return -1;
+
+        String digits = name.substring(prefix.length(), name.length() - suffix.length());
+        if (digits.length() > 18)
+            return -1;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+        }
+        long id = Long.parseLong(digits);
+        return StringUtils.pad(Long.toString(id), config.sequenceIdPadding(), '0').equals(digits) ? id : -1;
+    }
+
     public String getPatternText() {
+        if (this.source != null)
+            return this.source.getPatternText();
+
         StringBuilder patternText = new StringBuilder();
         for (NamePatternElement e : elements) {
             patternText.append(e.getPatternText());
@@ -3,6 +3,7 @@ package com.github.rvesse.baby.photo.sorter.model.naming;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.github.rvesse.baby.photo.sorter.model.Configuration;
 import com.github.rvesse.baby.photo.sorter.model.naming.elements.AgeElement;
 import com.github.rvesse.baby.photo.sorter.model.naming.elements.BabyNameElement;
 import com.github.rvesse.baby.photo.sorter.model.naming.elements.DateElement;
@@ -56,6 +57,45 @@ public class NamingPatternBuilder {
         return new NamingPattern(new ArrayList<>(elements));
     }
     
+    /**
+     * Compiles a naming pattern for a specific configuration
+     * <p>
+     * Elements whose text is constant for the run, fixed text and the baby
+     * name, are resolved up front and adjacent constant text merged into a
+     * single element so that rendering a name involves as few elements as
+     * possible. The compiled pattern renders names for any other
+     * configuration using the original pattern.
+     * </p>
+     * 
+     * @param pattern
+     *            Pattern
+     * @param config
+     *            Configuration
+     * @return Compiled pattern
+     */
+    public static NamingPattern compile(NamingPattern pattern, Configuration config) {
+        if (pattern.isCompiled())
+            return pattern;
+
+        List<NamePatternElement> compiled = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (NamePatternElement e : pattern.elements()) {
+            if (e instanceof FixedTextElement || e instanceof BabyNameElement) {
+                text.append(e.getText(null, config));
+                continue;
+            }
+            if (text.length() > 0) {
+                compiled.add(new FixedTextElement(text.toString()));
+                text.setLength(0);
+            }
+            compiled.add(e);
+        }
+        if (text.length() > 0) {
+            compiled.add(new FixedTextElement(text.toString()));
+        }
+        return new NamingPattern(compiled, pattern, config);
+    }
+    
     public static NamingPattern parse(String pattern) {
         NamingPatternBuilder builder = new NamingPatternBuilder();
         char[] cs = pattern.toCharArray();
@@ -1,12 +1,19 @@
 package com.github.rvesse.baby.photo.sorter.model.naming.elements;
 
+import java.io.IOException;
+
 import org.joda.time.Instant;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 
 import com.github.rvesse.baby.photo.sorter.model.Configuration;
 import com.github.rvesse.baby.photo.sorter.model.Photo;
 
 public class DateElement implements NamePatternElement {
 
+    // Same format as Instant.toString()
+    private static final DateTimeFormatter FORMAT = ISODateTimeFormat.dateTime();
+
     @Override
     public String getText(Photo photo, Configuration config) {
         Instant creationDate = photo.creationDate();
@@ -17,6 +24,19 @@ public class DateElement implements NamePatternElement {
         return "";
     }
 
+    @Override
+    public void appendText(StringBuilder builder, Photo photo, Configuration config) {
+        Instant creationDate = photo.creationDate();
+        if (creationDate != null) {
+            try {
+                FORMAT.printTo(builder, creationDate);
+            } catch (IOException e) {
+                // Never thrown when appending to a StringBuilder
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
     @Override
     public String getPatternText() {
         return "%d";
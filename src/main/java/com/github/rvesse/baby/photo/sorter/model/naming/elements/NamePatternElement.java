@@ -6,6 +6,24 @@ import com.github.rvesse.baby.photo.sorter.model.Photo;
 public interface NamePatternElement {
 
     public String getText(Photo photo, Configuration config);
+
+    /**
+     * Appends the text for the element to the given builder
+     * <p>
+     * Elements should override this if they can append their text without
+     * first creating an intermediate string.
+     * </p>
+     * 
+     * @param builder
+     *            Builder
+     * @param photo
+     *            Photo
+     * @param config
+     *            Configuration
+     */
+    public default void appendText(StringBuilder builder, Photo photo, Configuration config) {
+        builder.append(getText(photo, config));
+    }
     
     public String getPatternText();
 }
@@ -15,6 +15,24 @@ public class SequenceElement implements NamePatternElement {
         return seqId;
     }
 
+    @Override
+    public void appendText(StringBuilder builder, Photo photo, Configuration config) {
+        long id = photo.getSequenceId();
+        if (id < 0) {
+            builder.append(getText(photo, config));
+            return;
+        }
+        // Write the padding digits directly
+        int digits = 1;
+        for (long remaining = id / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < config.sequenceIdPadding(); i++) {
+            builder.append('0');
+        }
+        builder.append(id);
+    }
+
     @Override
     public String getPatternText() {
         return "%s";
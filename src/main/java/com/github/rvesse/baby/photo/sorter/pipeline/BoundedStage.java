@@ -0,0 +1,115 @@
+package com.github.rvesse.baby.photo.sorter.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.rvesse.baby.photo.sorter.metrics.ThreadUsage;
+import com.github.rvesse.baby.photo.sorter.utils.IoExecutor;
+
+/**
+ * Runs a {@link Stage} fed by a bounded queue
+ * <p>
+ * Items are processed as soon as they are accepted so that the stage overlaps
+ * with whatever is producing them. Each item is a separate task on an
+ * {@link IoExecutor}, which bounds how many items are in progress at once. If
+ * the stage falls behind the queue fills and {@link #accept(Object)} blocks,
+ * so a fast producer can never get more than the queue capacity ahead of a
+ * slow stage. Stages are chained by having one stage accept its output into
+ * the next.
+ * </p>
+ * <p>
+ * If processing any item fails the remaining items are drained without being
+ * processed, so producers are never left blocked, and the first failure is
+ * reported by {@link #complete()}.
+ * </p>
+ *
+ * @param <T>
+ *            Item type
+ */
+public class BoundedStage<T> implements AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final Stage<T> stage;
+    private final BlockingQueue<Object> queue;
+    private final IoExecutor executor;
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(ThreadUsage.threadFactory());
+    private final Future<?> dispatching;
+
+    /**
+     * Creates and starts a new stage
+     *
+     * @param threads
+     *            Maximum number of items processed at once
+     * @param capacity
+     *            Maximum number of items waiting to be processed
+     * @param stage
+     *            Stage
+     */
+    public BoundedStage(int threads, int capacity, Stage<T> stage) {
+        this.stage = stage;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.executor = new IoExecutor(threads);
+        this.dispatching = this.dispatcher.submit(this::dispatch);
+    }
+
+    /**
+     * Accepts an item for processing, blocking while the queue is full
+     *
+     * @param item
+     *            Item
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting for space in the queue
+     */
+    public void accept(T item) throws InterruptedException {
+        this.queue.put(item);
+    }
+
+    /**
+     * Waits for all accepted items to be processed
+     * <p>
+     * No further items may be accepted once this is called.
+     * </p>
+     *
+     * @throws ExecutionException
+     *             Thrown if processing any item failed
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting
+     */
+    public void complete() throws ExecutionException, InterruptedException {
+        try {
+            this.queue.put(END);
+            this.dispatching.get();
+            this.executor.await();
+        } finally {
+            this.dispatcher.shutdown();
+            this.executor.close();
+        }
+    }
+
+    /**
+     * Abandons any items still waiting to be processed, has no effect if the
+     * stage has already completed
+     */
+    @Override
+    public void close() {
+        this.dispatcher.shutdownNow();
+        this.executor.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Void dispatch() throws InterruptedException {
+        while (true) {
+            Object item = this.queue.take();
+            if (item == END)
+                return null;
+            if (this.executor.failed())
+                continue;
+            this.executor.execute(() -> this.stage.process((T) item));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.rvesse.baby.photo.sorter.pipeline;
+
+/**
+ * A stage of a pipeline, processes items one at a time
+ * <p>
+ * A stage may be called from several threads at once so must be thread safe,
+ * it passes its output on by handing it to the next stage.
+ * </p>
+ *
+ * @param <T>
+ *            Item type
+ */
+@FunctionalInterface
+public interface Stage<T> {
+
+    /**
+     * Processes an item
+     *
+     * @param item
+     *            Item
+     * @throws Exception
+     *             Thrown if the item cannot be processed
+     */
+    void process(T item) throws Exception;
+}
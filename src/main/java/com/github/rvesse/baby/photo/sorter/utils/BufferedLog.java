@@ -0,0 +1,111 @@
+package com.github.rvesse.baby.photo.sorter.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+
+/**
+ * A log that either writes straight through to a logger or buffers messages
+ * until they are replayed
+ * <p>
+ * Work carried out in parallel buffers its messages so that they can be
+ * replayed in a deterministic order once the work completes, rather than being
+ * interleaved with the messages of other work in whatever order the threads
+ * happened to run.
+ * </p>
+ */
+public class BufferedLog {
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final class Message {
+        private final Level level;
+        private final String format;
+        private final Object[] args;
+
+        Message(Level level, String format, Object[] args) {
+            this.level = level;
+            this.format = format;
+            this.args = args;
+        }
+    }
+
+    private final Logger logger;
+    private final List<Message> messages;
+
+    /**
+     * Creates a new log
+     *
+     * @param logger
+     *            Logger that messages are ultimately written to
+     * @param buffered
+     *            Whether messages are buffered until {@link #replay()} is
+     *            called
+     */
+    public BufferedLog(Logger logger, boolean buffered) {
+        this.logger = logger;
+        this.messages = buffered ? new ArrayList<>() : null;
+    }
+
+    public boolean isDebugEnabled() {
+        return this.logger.isDebugEnabled();
+    }
+
+    public void debug(String format, Object... args) {
+        if (this.logger.isDebugEnabled())
+            log(Level.DEBUG, format, args);
+    }
+
+    public void info(String format, Object... args) {
+        log(Level.INFO, format, args);
+    }
+
+    public void warn(String format, Object... args) {
+        log(Level.WARN, format, args);
+    }
+
+    public void error(String format, Object... args) {
+        log(Level.ERROR, format, args);
+    }
+
+    private synchronized void log(Level level, String format, Object[] args) {
+        if (this.messages != null) {
+            this.messages.add(new Message(level, format, args));
+        } else {
+            write(level, format, args);
+        }
+    }
+
+    private void write(Level level, String format, Object[] args) {
+        switch (level) {
+        case DEBUG:
+            this.logger.debug(format, args);
+            break;
+        case INFO:
+            this.logger.info(format, args);
+            break;
+        case WARN:
+            this.logger.warn(format, args);
+            break;
+        default:
+            this.logger.error(format, args);
+            break;
+        }
+    }
+
+    /**
+     * Writes any buffered messages to the logger, in the order they were
+     * logged, and clears the buffer
+     */
+    public synchronized void replay() {
+        if (this.messages == null)
+            return;
+        for (Message message : this.messages) {
+            write(message.level, message.format, message.args);
+        }
+        this.messages.clear();
+    }
+}
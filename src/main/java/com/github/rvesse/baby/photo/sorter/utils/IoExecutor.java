@@ -0,0 +1,109 @@
+package com.github.rvesse.baby.photo.sorter.utils;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs blocking file I/O tasks, one task per file, with a bounded number in
+ * progress at once
+ * <p>
+ * A permit is acquired before each task is started and released once it
+ * finishes, so submitting blocks while the maximum number of tasks are in
+ * progress. This bounds the number of files open at once and means tasks are
+ * never queued up in memory. On Java 21 and above each task runs on its own
+ * virtual thread, otherwise tasks run on a pool of platform threads, see
+ * {@link IoThreads}.
+ * </p>
+ */
+public class IoExecutor implements AutoCloseable {
+
+    /**
+     * A task to execute
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Creates a new executor
+     *
+     * @param maxConcurrent
+     *            Maximum number of tasks in progress at once
+     */
+    public IoExecutor(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(this.maxConcurrent);
+        this.executor = IoThreads.newExecutor(this.maxConcurrent);
+    }
+
+    /**
+     * Starts a task, blocking while the maximum number of tasks are already in
+     * progress
+     * <p>
+     * If the task fails the failure is reported by {@link #await()}.
+     * </p>
+     *
+     * @param task
+     *            Task
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting to start the task
+     */
+    public void execute(Task task) throws InterruptedException {
+        this.permits.acquire();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    this.failure.compareAndSet(null, t);
+                } finally {
+                    this.permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets whether any task has failed
+     *
+     * @return True if failed
+     */
+    public boolean failed() {
+        return this.failure.get() != null;
+    }
+
+    /**
+     * Waits for all started tasks to finish
+     *
+     * @throws ExecutionException
+     *             Thrown if any task failed
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting
+     */
+    public void await() throws ExecutionException, InterruptedException {
+        this.permits.acquire(this.maxConcurrent);
+        this.permits.release(this.maxConcurrent);
+        Throwable t = this.failure.get();
+        if (t != null)
+            throw new ExecutionException(t);
+    }
+
+    /**
+     * Stops accepting tasks, tasks already in progress are allowed to finish
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+}
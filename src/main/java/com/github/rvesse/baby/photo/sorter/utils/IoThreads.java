@@ -0,0 +1,41 @@
+package com.github.rvesse.baby.photo.sorter.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.github.rvesse.baby.photo.sorter.metrics.ThreadUsage;
+
+/**
+ * Creates the threads that blocking file I/O runs on
+ * <p>
+ * This is the Java 8 implementation which uses a bounded pool of platform
+ * threads. The jar is multi-release and on Java 21 and above is replaced by an
+ * implementation that runs each task on its own virtual thread.
+ * </p>
+ */
+public final class IoThreads {
+
+    private IoThreads() {
+    }
+
+    /**
+     * Creates an executor for blocking I/O tasks
+     *
+     * @param maxConcurrent
+     *            Maximum number of tasks that will be submitted to run
+     *            concurrently
+     * @return Executor
+     */
+    public static ExecutorService newExecutor(int maxConcurrent) {
+        return Executors.newFixedThreadPool(Math.max(1, maxConcurrent), ThreadUsage.threadFactory());
+    }
+
+    /**
+     * Gets whether tasks run on virtual threads
+     *
+     * @return True if virtual threads, false if platform threads
+     */
+    public static boolean isVirtual() {
+        return false;
+    }
+}
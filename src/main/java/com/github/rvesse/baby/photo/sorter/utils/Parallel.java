@@ -0,0 +1,47 @@
+package com.github.rvesse.baby.photo.sorter.utils;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+public class Parallel {
+
+    private Parallel() {
+    }
+
+    /**
+     * Applies an action to every item of a list with a bounded number of
+     * items in progress at once
+     * <p>
+     * Each item is a separate task on an {@link IoExecutor} so that slow
+     * items don't hold up the remaining items, on Java 21 and above each item
+     * gets its own virtual thread. Once any item fails no further items are
+     * started.
+     * </p>
+     * 
+     * @param items
+     *            Items
+     * @param threads
+     *            Maximum number of items in progress at once
+     * @param action
+     *            Action to apply
+     * @throws ExecutionException
+     *             Thrown if the action fails for any item
+     * @throws InterruptedException
+     *             Thrown if interrupted while waiting for the items
+     */
+    public static <T> void forEach(List<T> items, int threads, Consumer<T> action)
+            throws ExecutionException, InterruptedException {
+        if (items.isEmpty())
+            return;
+
+        try (IoExecutor executor = new IoExecutor(Math.min(threads, items.size()))) {
+            for (T item : items) {
+                if (executor.failed())
+                    break;
+                executor.execute(() -> action.accept(item));
+            }
+            executor.await();
+        }
+    }
+}
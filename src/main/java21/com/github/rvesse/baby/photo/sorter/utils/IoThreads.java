@@ -0,0 +1,41 @@
+package com.github.rvesse.baby.photo.sorter.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the threads that blocking file I/O runs on
+ * <p>
+ * This is the Java 21 implementation which runs each task on its own virtual
+ * thread, so a task blocked on high latency storage doesn't tie up a platform
+ * thread. The number of tasks in progress, and thus of open files, is bounded
+ * by the caller, see {@link IoExecutor}.
+ * </p>
+ */
+public final class IoThreads {
+
+    private IoThreads() {
+    }
+
+    /**
+     * Creates an executor for blocking I/O tasks
+     *
+     * @param maxConcurrent
+     *            Maximum number of tasks that will be submitted to run
+     *            concurrently, unused since virtual threads are created per
+     *            task
+     * @return Executor
+     */
+    public static ExecutorService newExecutor(int maxConcurrent) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("io-", 0).factory());
+    }
+
+    /**
+     * Gets whether tasks run on virtual threads
+     *
+     * @return True if virtual threads, false if platform threads
+     */
+    public static boolean isVirtual() {
+        return true;
+    }
+}